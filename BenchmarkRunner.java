@@ -0,0 +1,44 @@
+import java.util.concurrent.ForkJoinPool;
+
+// One mode of MatrixBenchmark. The benchmark picks a runner from --op and
+// --kernel, calls prepare once, times run for every warm-up and measured
+// iteration, then calls finish and prints the samples. Setup done in
+// prepare is never timed.
+abstract class BenchmarkRunner {
+    final MatrixBenchmark benchmark;
+    
+    // Operands reported in the output; b is empty for operations without
+    // one, and c is only set for multiply-add
+    SparseMatrix a, b, c;
+    
+    BenchmarkRunner(MatrixBenchmark benchmark) {
+        this.benchmark = benchmark;
+    }
+    
+    // A, B and for multiply-add C, loaded or generated
+    void prepare(ForkJoinPool pool) {
+        a = benchmark.operandA(pool);
+        b = benchmark.operandB(pool);
+        if (benchmark.op.equals("multiply-add")) c = benchmark.generate(benchmark.seed + 2, pool);
+    }
+    
+    // One timed operation; the result is only counted
+    abstract Object run(ForkJoinPool pool);
+    
+    String kernelName() {
+        return benchmark.kernel;
+    }
+    
+    // Kernel picked by the last run, or null when it is kernelName()
+    String runKernelName() {
+        return null;
+    }
+    
+    long inputNonZeros() {
+        return (long) a.getNonZeroCount() + b.getNonZeroCount() + (c == null ? 0 : c.getNonZeroCount());
+    }
+    
+    // After the last run, once the pool is shut down
+    void finish() {
+    }
+}
@@ -0,0 +1,309 @@
+import java.util.Arrays;
+
+// Block sparse row storage: the matrix is tiled into bs x bs blocks and
+// only blocks holding a non-zero are kept, in CSR order over block rows.
+// Block p covers rows blockRow * bs .. and columns blockColIdx[p] * bs ..,
+// and its values sit row-major in values[p * bs * bs .. (p + 1) * bs * bs).
+// Blocks on the right and bottom edges are zero-padded. One index serves
+// bs * bs values and the kernels run small dense loops, which pays off
+// when non-zeros come in dense clusters. Scattered patterns fill each
+// block with one entry, so fromSparse refuses patterns that would store
+// more than MAX_FILL values per non-zero.
+public class BsrMatrix {
+    final int rows, cols, blockSize;
+    final int[] blockRowPtr;
+    final int[] blockColIdx;
+    final double[] values;
+    
+    static final int MAX_FILL = 8;
+    
+    public BsrMatrix(int r, int c, int blockSize, int[] blockRowPtr, int[] blockColIdx, double[] values) {
+        rows = r;
+        cols = c;
+        this.blockSize = blockSize;
+        this.blockRowPtr = blockRowPtr;
+        this.blockColIdx = blockColIdx;
+        this.values = values;
+    }
+    
+    public static BsrMatrix fromSparse(SparseMatrix matrix, int bs) {
+        if (bs <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        int blockRows = blocks(matrix.rows, bs), blockCols = blocks(matrix.cols, bs);
+        int[] marker = new int[blockCols];
+        Arrays.fill(marker, -1);
+        int[] blockRowPtr = new int[blockRows + 1];
+        long count = 0;
+        for (int bi = 0; bi < blockRows; bi++) {
+            for (int i = bi * bs, end = Math.min(matrix.rows, i + bs); i < end; i++) {
+                for (int p = matrix.rowPtr[i]; p < matrix.rowPtr[i + 1]; p++) {
+                    int bj = matrix.colIdx[p] / bs;
+                    if (marker[bj] != bi) {
+                        marker[bj] = bi;
+                        count++;
+                    }
+                }
+            }
+            if (count * bs * bs > MatrixGenerator.MAX_NONZEROS) {
+                throw new IllegalArgumentException("Blocked matrix has too many stored values");
+            }
+            blockRowPtr[bi + 1] = (int) count;
+        }
+        long stored = count * bs * bs;
+        if (stored > (long) MAX_FILL * Math.max(matrix.getNonZeroCount(), matrix.rows)) {
+            throw new IllegalArgumentException(count + " blocks of " + bs + "x" + bs + " for "
+                    + matrix.getNonZeroCount() + " non-zeros; BSR would waste too much space");
+        }
+        
+        int[] blockColIdx = new int[(int) count];
+        double[] values = new double[(int) stored];
+        // slot[bj] is the position of block column bj in the current block row
+        int[] slot = new int[blockCols];
+        Arrays.fill(marker, -1);
+        int area = bs * bs;
+        for (int bi = 0; bi < blockRows; bi++) {
+            int start = blockRowPtr[bi], next = start;
+            for (int i = bi * bs, end = Math.min(matrix.rows, i + bs); i < end; i++) {
+                for (int p = matrix.rowPtr[i]; p < matrix.rowPtr[i + 1]; p++) {
+                    int bj = matrix.colIdx[p] / bs;
+                    if (marker[bj] != bi) {
+                        marker[bj] = bi;
+                        blockColIdx[next++] = bj;
+                    }
+                }
+            }
+            Arrays.sort(blockColIdx, start, next);
+            for (int p = start; p < next; p++) {
+                slot[blockColIdx[p]] = p;
+            }
+            for (int i = bi * bs, end = Math.min(matrix.rows, i + bs); i < end; i++) {
+                for (int p = matrix.rowPtr[i]; p < matrix.rowPtr[i + 1]; p++) {
+                    int j = matrix.colIdx[p];
+                    values[slot[j / bs] * area + (i - bi * bs) * bs + j % bs] = matrix.values[p];
+                }
+            }
+        }
+        return new BsrMatrix(matrix.rows, matrix.cols, bs, blockRowPtr, blockColIdx, values);
+    }
+    
+    public SparseMatrix toSparse() {
+        int bs = blockSize, area = bs * bs;
+        int[] rowPtr = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            int bi = i / bs, r = i % bs, count = 0;
+            for (int p = blockRowPtr[bi]; p < blockRowPtr[bi + 1]; p++) {
+                for (int c = 0, base = p * area + r * bs; c < bs; c++) {
+                    if (values[base + c] != 0.0) count++;
+                }
+            }
+            rowPtr[i + 1] = rowPtr[i] + count;
+        }
+        int[] colIdx = new int[rowPtr[rows]];
+        double[] vals = new double[rowPtr[rows]];
+        // Blocks are sorted by column, so each row comes out sorted
+        for (int i = 0, k = 0; i < rows; i++) {
+            int bi = i / bs, r = i % bs;
+            for (int p = blockRowPtr[bi]; p < blockRowPtr[bi + 1]; p++) {
+                for (int c = 0, base = p * area + r * bs; c < bs; c++) {
+                    if (values[base + c] != 0.0) {
+                        colIdx[k] = blockColIdx[p] * bs + c;
+                        vals[k++] = values[base + c];
+                    }
+                }
+            }
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, vals);
+    }
+    
+    public double get(int row, int col) {
+        int bs = blockSize, bi = row / bs;
+        int p = Arrays.binarySearch(blockColIdx, blockRowPtr[bi], blockRowPtr[bi + 1], col / bs);
+        return p >= 0 ? values[p * bs * bs + (row % bs) * bs + col % bs] : 0.0;
+    }
+    
+    public int getBlockCount() {
+        return blockColIdx.length;
+    }
+    
+    public long getNonZeroCount() {
+        long count = 0;
+        for (double v : values) {
+            if (v != 0.0) count++;
+        }
+        return count;
+    }
+    
+    // y = A x, one small dense product per block
+    public void multiply(double[] x, double[] y) {
+        int bs = blockSize, area = bs * bs;
+        for (int bi = 0; bi + 1 < blockRowPtr.length; bi++) {
+            int row0 = bi * bs, rEnd = Math.min(bs, rows - row0);
+            Arrays.fill(y, row0, row0 + rEnd, 0.0);
+            for (int p = blockRowPtr[bi]; p < blockRowPtr[bi + 1]; p++) {
+                int col0 = blockColIdx[p] * bs, cEnd = Math.min(bs, cols - col0);
+                for (int r = 0; r < rEnd; r++) {
+                    double sum = 0.0;
+                    for (int c = 0, base = p * area + r * bs; c < cEnd; c++) {
+                        sum += values[base + c] * x[col0 + c];
+                    }
+                    y[row0 + r] += sum;
+                }
+            }
+        }
+    }
+    
+    // Merge of the block rows; blocks that cancel to zero are dropped
+    public static BsrMatrix add(BsrMatrix a, BsrMatrix b, boolean subtract) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("Matrices must have the same dimensions");
+        }
+        if (a.blockSize != b.blockSize) {
+            throw new IllegalArgumentException("Block sizes differ: " + a.blockSize + " and " + b.blockSize);
+        }
+        int bs = a.blockSize, area = bs * bs, blockRows = a.blockRowPtr.length - 1;
+        int capacity = a.blockColIdx.length + b.blockColIdx.length;
+        if ((long) capacity * area > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Sum has too many stored values");
+        }
+        int[] blockRowPtr = new int[blockRows + 1];
+        int[] blockColIdx = new int[capacity];
+        double[] values = new double[capacity * area];
+        double sign = subtract ? -1.0 : 1.0;
+        int w = 0;
+        for (int bi = 0; bi < blockRows; bi++) {
+            int p = a.blockRowPtr[bi], pEnd = a.blockRowPtr[bi + 1];
+            int q = b.blockRowPtr[bi], qEnd = b.blockRowPtr[bi + 1];
+            while (p < pEnd || q < qEnd) {
+                int ca = p < pEnd ? a.blockColIdx[p] : Integer.MAX_VALUE;
+                int cb = q < qEnd ? b.blockColIdx[q] : Integer.MAX_VALUE;
+                int base = w * area;
+                if (ca <= cb) {
+                    System.arraycopy(a.values, p * area, values, base, area);
+                    p++;
+                }
+                if (cb <= ca) {
+                    for (int e = 0, from = q * area; e < area; e++) {
+                        values[base + e] += sign * b.values[from + e];
+                    }
+                    q++;
+                }
+                if (!isZero(values, base, area)) {
+                    blockColIdx[w++] = Math.min(ca, cb);
+                } else {
+                    Arrays.fill(values, base, base + area, 0.0);
+                }
+            }
+            blockRowPtr[bi + 1] = w;
+        }
+        return new BsrMatrix(a.rows, a.cols, bs, blockRowPtr, Arrays.copyOf(blockColIdx, w),
+                Arrays.copyOf(values, w * area));
+    }
+    
+    // Gustavson SpGEMM over blocks: block row I of C accumulates
+    // A(I, K) * B(K, J) for every pair of stored blocks, each a bs x bs GEMM
+    public static BsrMatrix multiply(BsrMatrix a, BsrMatrix b) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + a.rows + "x" + a.cols + " by "
+                    + b.rows + "x" + b.cols);
+        }
+        if (a.blockSize != b.blockSize) {
+            throw new IllegalArgumentException("Block sizes differ: " + a.blockSize + " and " + b.blockSize);
+        }
+        int bs = a.blockSize, area = bs * bs;
+        int blockRows = a.blockRowPtr.length - 1, blockCols = blocks(b.cols, bs);
+        int[] marker = new int[blockCols];
+        Arrays.fill(marker, -1);
+        double[] accumulator = new double[blockCols * area];
+        int[] columns = new int[Math.max(1, blockCols)];
+        
+        int[] blockRowPtr = new int[blockRows + 1];
+        int[] blockColIdx = new int[16];
+        double[] values = new double[16 * area];
+        int w = 0;
+        for (int bi = 0; bi < blockRows; bi++) {
+            int end = 0;
+            for (int p = a.blockRowPtr[bi]; p < a.blockRowPtr[bi + 1]; p++) {
+                int bk = a.blockColIdx[p], baseA = p * area;
+                for (int q = b.blockRowPtr[bk]; q < b.blockRowPtr[bk + 1]; q++) {
+                    int bj = b.blockColIdx[q], baseB = q * area, baseC = bj * area;
+                    if (marker[bj] != bi) {
+                        marker[bj] = bi;
+                        columns[end++] = bj;
+                        Arrays.fill(accumulator, baseC, baseC + area, 0.0);
+                    }
+                    for (int r = 0; r < bs; r++) {
+                        for (int k = 0; k < bs; k++) {
+                            double valA = a.values[baseA + r * bs + k];
+                            if (valA == 0.0) continue;
+                            for (int c = 0, row = baseC + r * bs, rowB = baseB + k * bs; c < bs; c++) {
+                                accumulator[row + c] += valA * b.values[rowB + c];
+                            }
+                        }
+                    }
+                }
+            }
+            Arrays.sort(columns, 0, end);
+            if ((long) (w + end) * area > MatrixGenerator.MAX_NONZEROS) {
+                throw new IllegalArgumentException("Product has too many stored values");
+            }
+            if (w + end > blockColIdx.length) {
+                int grown = (int) Math.min(Math.max(2L * blockColIdx.length, w + end),
+                        MatrixGenerator.MAX_NONZEROS / area);
+                blockColIdx = Arrays.copyOf(blockColIdx, grown);
+                values = Arrays.copyOf(values, grown * area);
+            }
+            for (int e = 0; e < end; e++) {
+                int baseC = columns[e] * area;
+                if (isZero(accumulator, baseC, area)) continue;
+                blockColIdx[w] = columns[e];
+                System.arraycopy(accumulator, baseC, values, w * area, area);
+                w++;
+            }
+            blockRowPtr[bi + 1] = w;
+        }
+        return new BsrMatrix(a.rows, b.cols, bs, blockRowPtr, Arrays.copyOf(blockColIdx, w),
+                Arrays.copyOf(values, w * area));
+    }
+    
+    // Counting sort of the blocks by block column, each block transposed
+    // on the way
+    public BsrMatrix transpose() {
+        int bs = blockSize, area = bs * bs;
+        int blockRows = blockRowPtr.length - 1, blockCols = blocks(cols, bs);
+        int[] tRowPtr = new int[blockCols + 1];
+        for (int bj : blockColIdx) {
+            tRowPtr[bj + 1]++;
+        }
+        for (int bj = 0; bj < blockCols; bj++) {
+            tRowPtr[bj + 1] += tRowPtr[bj];
+        }
+        int[] next = Arrays.copyOf(tRowPtr, blockCols);
+        int[] tColIdx = new int[blockColIdx.length];
+        double[] tValues = new double[values.length];
+        // Block rows are visited in order, so each transposed row fills sorted
+        for (int bi = 0; bi < blockRows; bi++) {
+            for (int p = blockRowPtr[bi]; p < blockRowPtr[bi + 1]; p++) {
+                int q = next[blockColIdx[p]]++;
+                tColIdx[q] = bi;
+                for (int r = 0; r < bs; r++) {
+                    for (int c = 0; c < bs; c++) {
+                        tValues[q * area + c * bs + r] = values[p * area + r * bs + c];
+                    }
+                }
+            }
+        }
+        return new BsrMatrix(cols, rows, bs, tRowPtr, tColIdx, tValues);
+    }
+    
+    private static int blocks(int n, int bs) {
+        return (n + bs - 1) / bs;
+    }
+    
+    private static boolean isZero(double[] array, int from, int length) {
+        for (int e = from; e < from + length; e++) {
+            if (array[e] != 0.0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Row-major dense matrix whose values are stored at a chosen Precision;
+// element (i, j) is values[i * cols + j], as in DenseMatrix. An int8 copy
+// of an n x n matrix takes n^2 bytes instead of 8 n^2.
+//
+// Kernels run over row chunks on the pool like the DenseMatrix kernels,
+// each output row built in a long or double scratch row by the per-type
+// loops of CompactValues. Unlike the sparse kernels the result precision
+// is fixed before the run, from the largest magnitudes of the operands:
+// integer results take the narrowest integer precision that any result
+// could need, and everything else follows CompactSparseMatrix.
+public class CompactDenseMatrix {
+    final int rows, cols;
+    final CompactValues values;
+    
+    public CompactDenseMatrix(int r, int c, CompactValues values) {
+        rows = r;
+        cols = c;
+        this.values = values;
+    }
+    
+    public static CompactDenseMatrix fromDense(DenseMatrix dense, Precision precision) {
+        return new CompactDenseMatrix(dense.rows, dense.cols,
+                CompactValues.encode(dense.data, dense.data.length, precision));
+    }
+    
+    public DenseMatrix toDense() {
+        return new DenseMatrix(rows, cols, values.toDoubles());
+    }
+    
+    public Precision getPrecision() {
+        return values.precision;
+    }
+    
+    public double get(int row, int col) {
+        return values.get(row * cols + col);
+    }
+    
+    public long getNonZeroCount() {
+        long count = 0;
+        for (int p = 0; p < values.length; p++) {
+            if (values.get(p) != 0.0) count++;
+        }
+        return count;
+    }
+    
+    public long getByteSize() {
+        return values.getByteSize();
+    }
+    
+    public static CompactDenseMatrix add(final CompactDenseMatrix a, final CompactDenseMatrix b,
+            final boolean subtract, ForkJoinPool pool) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("Matrices must have the same dimensions");
+        }
+        final boolean integer = a.getPrecision().isInteger() && b.getPrecision().isInteger();
+        Precision precision = integer ? Precision.forIntegers(a.values.maxAbs() + b.values.maxAbs())
+                : Precision.floating(a.getPrecision(), b.getPrecision());
+        final CompactDenseMatrix result = new CompactDenseMatrix(a.rows, a.cols,
+                new CompactValues(precision, a.values.length));
+        final int n = a.cols;
+        final long sign = subtract ? -1 : 1;
+        int[] bounds = MatrixKernels.uniformBounds(a.rows, pool.getParallelism());
+        MatrixKernels.runChunks(pool, bounds, new MatrixKernels.ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                long[] longRow = integer ? new long[n] : null;
+                double[] doubleRow = integer ? null : new double[n];
+                for (int i = from; i < to; i++) {
+                    int offset = i * n;
+                    if (integer) {
+                        a.values.read(offset, longRow, 0, n);
+                        b.values.axpy(sign, offset, longRow, n);
+                        result.values.write(longRow, 0, offset, n);
+                    } else {
+                        a.values.read(offset, doubleRow, 0, n);
+                        b.values.axpy((double) sign, offset, doubleRow, n);
+                        result.values.write(doubleRow, 0, offset, n);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+    
+    // i-k-j multiply: row i of C accumulates a(i, k) times row k of B in a
+    // wide scratch row, which is narrowed once at the end. Integer
+    // operands use long unless a row sum could overflow it.
+    public static CompactDenseMatrix multiply(final CompactDenseMatrix a, final CompactDenseMatrix b,
+            ForkJoinPool pool) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + a.rows + "x" + a.cols + " by "
+                    + b.rows + "x" + b.cols);
+        }
+        double bound = (double) a.cols * a.values.maxAbs() * b.values.maxAbs();
+        boolean bothInteger = a.getPrecision().isInteger() && b.getPrecision().isInteger();
+        final boolean integer = bothInteger && bound < 0x1p62;
+        Precision precision = integer ? Precision.forIntegers(bound)
+                : bothInteger ? Precision.FLOAT64
+                : Precision.floating(a.getPrecision(), b.getPrecision());
+        long size = (long) a.rows * b.cols;
+        if (size > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Dense matrix too large: " + a.rows + "x" + b.cols);
+        }
+        final CompactDenseMatrix result = new CompactDenseMatrix(a.rows, b.cols,
+                new CompactValues(precision, (int) size));
+        final int n = a.cols, m = b.cols;
+        int[] bounds = MatrixKernels.uniformBounds(a.rows, pool.getParallelism());
+        MatrixKernels.runChunks(pool, bounds, new MatrixKernels.ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                long[] longRow = integer ? new long[m] : null;
+                double[] doubleRow = integer ? null : new double[m];
+                for (int i = from; i < to; i++) {
+                    if (integer) {
+                        Arrays.fill(longRow, 0);
+                        for (int k = 0; k < n; k++) {
+                            long valA = a.values.getLong(i * n + k);
+                            if (valA != 0) b.values.axpy(valA, k * m, longRow, m);
+                        }
+                        result.values.write(longRow, 0, i * m, m);
+                    } else {
+                        Arrays.fill(doubleRow, 0.0);
+                        for (int k = 0; k < n; k++) {
+                            double valA = a.values.get(i * n + k);
+                            if (valA != 0.0) b.values.axpy(valA, k * m, doubleRow, m);
+                        }
+                        result.values.write(doubleRow, 0, i * m, m);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+    
+    // Blocked transpose, each chunk owning a range of output rows
+    public CompactDenseMatrix transpose(ForkJoinPool pool) {
+        final CompactDenseMatrix result = new CompactDenseMatrix(cols, rows,
+                new CompactValues(getPrecision(), values.length));
+        int[] bounds = MatrixKernels.uniformBounds(cols, pool.getParallelism());
+        MatrixKernels.runChunks(pool, bounds, new MatrixKernels.ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                values.transposeInto(rows, cols, result.values, from, to);
+            }
+        });
+        return result;
+    }
+}
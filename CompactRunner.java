@@ -0,0 +1,86 @@
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+// --precision other than float64 with the sparse or dense kernel: the
+// operands are stored as CompactSparseMatrix or CompactDenseMatrix at the
+// requested precision, or for "auto" the narrowest that holds both
+// exactly, and their kernels are timed. The operand sizes are reported
+// on stderr next to what float64 would take.
+class CompactRunner extends BenchmarkRunner {
+    private Precision precision;
+    private Object compactA, compactB;
+    
+    CompactRunner(MatrixBenchmark benchmark) {
+        super(benchmark);
+    }
+    
+    void prepare(ForkJoinPool pool) {
+        super.prepare(pool);
+        precision = choosePrecision(benchmark.precision, a, b);
+        if (benchmark.kernel.equals("dense")) {
+            DenseMatrix denseA = a.toDense(), denseB = b.toDense();
+            CompactDenseMatrix x = (CompactDenseMatrix) toCompact(denseA, precision);
+            CompactDenseMatrix y = (CompactDenseMatrix) toCompact(denseB, precision);
+            reportSize(precision, x.getByteSize() + y.getByteSize(),
+                    8L * (denseA.data.length + denseB.data.length));
+            compactA = x;
+            compactB = y;
+        } else {
+            CompactSparseMatrix x = (CompactSparseMatrix) toCompact(a, precision);
+            CompactSparseMatrix y = (CompactSparseMatrix) toCompact(b, precision);
+            reportSize(precision, x.getByteSize() + y.getByteSize(), sparseBytes(a) + sparseBytes(b));
+            compactA = x;
+            compactB = y;
+        }
+    }
+    
+    String kernelName() {
+        String name = benchmark.kernel.equals("dense") ? MatrixKernels.SCALAR_KERNELS.getName() : "sparse";
+        return name + "-" + precision;
+    }
+    
+    Object run(ForkJoinPool pool) {
+        String op = benchmark.op;
+        boolean subtract = op.equals("subtract");
+        if (compactA instanceof CompactSparseMatrix) {
+            CompactSparseMatrix x = (CompactSparseMatrix) compactA, y = (CompactSparseMatrix) compactB;
+            if (op.equals("multiply")) return CompactSparseMatrix.multiply(x, y);
+            if (op.equals("transpose")) return x.transpose();
+            return CompactSparseMatrix.add(x, y, subtract);
+        }
+        CompactDenseMatrix x = (CompactDenseMatrix) compactA, y = (CompactDenseMatrix) compactB;
+        if (op.equals("multiply")) return CompactDenseMatrix.multiply(x, y, pool);
+        if (op.equals("transpose")) return x.transpose(pool);
+        return CompactDenseMatrix.add(x, y, subtract, pool);
+    }
+    
+    // The requested precision, or for "auto" the narrowest that holds
+    // every value of both inputs exactly
+    static Precision choosePrecision(String name, SparseMatrix a, SparseMatrix b) {
+        if (!name.equals("auto")) return Precision.parse(name);
+        return Precision.holding(Precision.narrowest(a.values, a.getNonZeroCount()),
+                Precision.narrowest(b.values, b.getNonZeroCount()));
+    }
+    
+    // matrix, a SparseMatrix or DenseMatrix, stored at p; exits if a value
+    // does not fit
+    static Object toCompact(Object matrix, Precision p) {
+        try {
+            return matrix instanceof DenseMatrix ? CompactDenseMatrix.fromDense((DenseMatrix) matrix, p)
+                    : CompactSparseMatrix.fromSparse((SparseMatrix) matrix, p);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Cannot store the inputs as " + p + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+    
+    static long sparseBytes(SparseMatrix m) {
+        return 4L * (m.rows + 1) + 12L * m.getNonZeroCount();
+    }
+    
+    static void reportSize(Precision p, long compactBytes, long fullBytes) {
+        System.err.println(String.format(Locale.ROOT, "%s operands: %.1f MB (%.1f MB as float64)",
+                p, compactBytes / (1024.0 * 1024.0), fullBytes / (1024.0 * 1024.0)));
+    }
+}
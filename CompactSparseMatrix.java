@@ -0,0 +1,204 @@
+import java.util.Arrays;
+
+// CSR matrix whose values are stored at a chosen Precision: the same
+// rowPtr and colIdx as SparseMatrix, with values in a CompactValues
+// instead of double[]. Integer-valued matrices such as the generated ones
+// fit int8, which cuts the value array to an eighth and a whole entry from
+// 12 bytes to 5.
+//
+// Kernels follow MatrixKernels, with the per-type inner loops in
+// CompactValues. Operands that are both integer are combined in long and
+// the result stored at the narrowest integer precision that holds it
+// (float64 past the int range); otherwise they are combined in double and
+// stored at the precision holding both operands (Precision.holding), so
+// float32 only when neither is float64 or int32.
+public class CompactSparseMatrix {
+    final int rows, cols;
+    final int[] rowPtr;
+    final int[] colIdx;
+    final CompactValues values;
+    
+    public CompactSparseMatrix(int r, int c, int[] rowPtr, int[] colIdx, CompactValues values) {
+        rows = r;
+        cols = c;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+    
+    // Shares the index arrays of matrix
+    public static CompactSparseMatrix fromSparse(SparseMatrix matrix, Precision precision) {
+        return new CompactSparseMatrix(matrix.rows, matrix.cols, matrix.rowPtr, matrix.colIdx,
+                CompactValues.encode(matrix.values, matrix.getNonZeroCount(), precision));
+    }
+    
+    public SparseMatrix toSparse() {
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values.toDoubles());
+    }
+    
+    public Precision getPrecision() {
+        return values.precision;
+    }
+    
+    public double get(int row, int col) {
+        int p = Arrays.binarySearch(colIdx, rowPtr[row], rowPtr[row + 1], col);
+        return p >= 0 ? values.get(p) : 0.0;
+    }
+    
+    public int getNonZeroCount() {
+        return rowPtr[rows];
+    }
+    
+    // Heap held by the arrays, ignoring object headers
+    public long getByteSize() {
+        return 4L * (rows + 1) + 4L * getNonZeroCount() + values.getByteSize();
+    }
+    
+    // y = A x, accumulated in double
+    public void multiply(double[] x, double[] y) {
+        for (int i = 0; i < rows; i++) {
+            y[i] = values.dot(rowPtr[i], rowPtr[i + 1], colIdx, x);
+        }
+    }
+    
+    // Row merge as in MatrixKernels; entries that cancel are dropped
+    public static CompactSparseMatrix add(CompactSparseMatrix a, CompactSparseMatrix b, boolean subtract) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("Matrices must have the same dimensions");
+        }
+        boolean integer = a.getPrecision().isInteger() && b.getPrecision().isInteger();
+        long capacity = (long) a.getNonZeroCount() + b.getNonZeroCount();
+        if (capacity > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Sum has too many non-zero elements");
+        }
+        int[] rowPtr = new int[a.rows + 1];
+        int[] colIdx = new int[(int) capacity];
+        long[] longs = integer ? new long[(int) capacity] : null;
+        double[] doubles = integer ? null : new double[(int) capacity];
+        int w = 0;
+        for (int i = 0; i < a.rows; i++) {
+            int p = a.rowPtr[i], pEnd = a.rowPtr[i + 1];
+            int q = b.rowPtr[i], qEnd = b.rowPtr[i + 1];
+            while (p < pEnd || q < qEnd) {
+                int ca = p < pEnd ? a.colIdx[p] : Integer.MAX_VALUE;
+                int cb = q < qEnd ? b.colIdx[q] : Integer.MAX_VALUE;
+                int j = Math.min(ca, cb);
+                boolean nonZero;
+                if (integer) {
+                    long v = 0;
+                    if (ca <= cb) v += a.values.getLong(p++);
+                    if (cb <= ca) v += subtract ? -b.values.getLong(q++) : b.values.getLong(q++);
+                    longs[w] = v;
+                    nonZero = v != 0;
+                } else {
+                    double v = 0.0;
+                    if (ca <= cb) v += a.values.get(p++);
+                    if (cb <= ca) v += subtract ? -b.values.get(q++) : b.values.get(q++);
+                    doubles[w] = v;
+                    nonZero = v != 0.0;
+                }
+                if (nonZero) colIdx[w++] = j;
+            }
+            rowPtr[i + 1] = w;
+        }
+        CompactValues values = integer ? CompactValues.fromLongs(longs, w)
+                : CompactValues.fromDoubles(doubles, w, Precision.floating(a.getPrecision(), b.getPrecision()));
+        return new CompactSparseMatrix(a.rows, a.cols, rowPtr, Arrays.copyOf(colIdx, w), values);
+    }
+    
+    // Gustavson SpGEMM. The columns of each output row are collected from
+    // the indices first, then every row of B is scattered into the wide
+    // accumulator by the loop for its storage type. Integer operands use
+    // long unless the longest row of A could overflow it.
+    public static CompactSparseMatrix multiply(CompactSparseMatrix a, CompactSparseMatrix b) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + a.rows + "x" + a.cols + " by "
+                    + b.rows + "x" + b.cols);
+        }
+        int maxRow = 0;
+        for (int i = 0; i < a.rows; i++) {
+            maxRow = Math.max(maxRow, a.rowPtr[i + 1] - a.rowPtr[i]);
+        }
+        double bound = (double) maxRow * a.values.maxAbs() * b.values.maxAbs();
+        boolean bothInteger = a.getPrecision().isInteger() && b.getPrecision().isInteger();
+        boolean integer = bothInteger && bound < 0x1p62;
+        Precision floating = bothInteger ? Precision.FLOAT64
+                : Precision.floating(a.getPrecision(), b.getPrecision());
+        
+        int rows = a.rows, cols = b.cols;
+        int[] marker = new int[cols];
+        Arrays.fill(marker, -1);
+        long[] longAcc = integer ? new long[cols] : null;
+        double[] doubleAcc = integer ? null : new double[cols];
+        int[] columns = new int[Math.max(1, cols)];
+        
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[16];
+        long[] longs = integer ? new long[16] : null;
+        double[] doubles = integer ? null : new double[16];
+        int w = 0;
+        for (int i = 0; i < rows; i++) {
+            int end = 0;
+            for (int p = a.rowPtr[i]; p < a.rowPtr[i + 1]; p++) {
+                int k = a.colIdx[p];
+                for (int q = b.rowPtr[k]; q < b.rowPtr[k + 1]; q++) {
+                    int j = b.colIdx[q];
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        columns[end++] = j;
+                        if (integer) longAcc[j] = 0;
+                        else doubleAcc[j] = 0.0;
+                    }
+                }
+                if (integer) {
+                    b.values.scatter(a.values.getLong(p), b.rowPtr[k], b.rowPtr[k + 1], b.colIdx, longAcc);
+                } else {
+                    b.values.scatter(a.values.get(p), b.rowPtr[k], b.rowPtr[k + 1], b.colIdx, doubleAcc);
+                }
+            }
+            Arrays.sort(columns, 0, end);
+            if (w + end > colIdx.length) {
+                long grown = Math.max(2L * colIdx.length, (long) w + end);
+                if (grown > MatrixGenerator.MAX_NONZEROS) {
+                    throw new IllegalArgumentException("Product has too many non-zero elements");
+                }
+                colIdx = Arrays.copyOf(colIdx, (int) grown);
+                if (integer) longs = Arrays.copyOf(longs, (int) grown);
+                else doubles = Arrays.copyOf(doubles, (int) grown);
+            }
+            for (int e = 0; e < end; e++) {
+                int j = columns[e];
+                if (integer ? longAcc[j] == 0 : doubleAcc[j] == 0.0) continue;
+                colIdx[w] = j;
+                if (integer) longs[w] = longAcc[j];
+                else doubles[w] = doubleAcc[j];
+                w++;
+            }
+            rowPtr[i + 1] = w;
+        }
+        CompactValues values = integer ? CompactValues.fromLongs(longs, w)
+                : CompactValues.fromDoubles(doubles, w, floating);
+        return new CompactSparseMatrix(rows, cols, rowPtr, Arrays.copyOf(colIdx, w), values);
+    }
+    
+    // Counting sort by column as in SparseMatrix.transposeInto, with the
+    // values moved by one permutation in their own precision
+    public CompactSparseMatrix transpose() {
+        int nnz = getNonZeroCount();
+        int[] ptr = new int[cols + 1];
+        for (int p = 0; p < nnz; p++) ptr[colIdx[p] + 1]++;
+        for (int j = 0; j < cols; j++) ptr[j + 1] += ptr[j];
+        int[] idx = new int[nnz];
+        int[] target = new int[nnz];
+        for (int i = 0; i < rows; i++) {
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                int q = ptr[colIdx[p]]++;
+                idx[q] = i;
+                target[p] = q;
+            }
+        }
+        System.arraycopy(ptr, 0, ptr, 1, cols);
+        ptr[0] = 0;
+        return new CompactSparseMatrix(cols, rows, ptr, idx, values.permute(target));
+    }
+}
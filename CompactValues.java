@@ -0,0 +1,289 @@
+// A run of matrix values stored at one Precision: exactly one of doubles,
+// floats, ints and bytes is allocated. The loops of the compact kernels
+// live here, one copy per storage type, so the matrix classes never test
+// the precision per element. Integer values are combined in long and
+// floating ones in double, and only narrowed when a result is stored.
+public class CompactValues {
+    final Precision precision;
+    final int length;
+    final double[] doubles;
+    final float[] floats;
+    final int[] ints;
+    final byte[] bytes;
+    
+    // Square transpose tile, so reads and writes both stay within cache
+    private static final int TILE = 32;
+    
+    // Largest magnitude, computed on first use; bounds the results of
+    // integer kernels before they run
+    private double maxAbs = -1.0;
+    
+    CompactValues(Precision precision, int length) {
+        this.precision = precision;
+        this.length = length;
+        doubles = precision == Precision.FLOAT64 ? new double[length] : null;
+        floats = precision == Precision.FLOAT32 ? new float[length] : null;
+        ints = precision == Precision.INT32 ? new int[length] : null;
+        bytes = precision == Precision.INT8 ? new byte[length] : null;
+    }
+    
+    // values[0 .. length) at the given precision; the integer precisions
+    // refuse values they cannot hold exactly
+    public static CompactValues encode(double[] values, int length, Precision precision) {
+        CompactValues result = new CompactValues(precision, length);
+        switch (precision) {
+            case FLOAT64:
+                System.arraycopy(values, 0, result.doubles, 0, length);
+                break;
+            case FLOAT32:
+                for (int p = 0; p < length; p++) {
+                    result.floats[p] = (float) values[p];
+                }
+                break;
+            case INT32:
+                for (int p = 0; p < length; p++) {
+                    int v = (int) values[p];
+                    if (v != values[p]) throw notRepresentable(values[p], precision);
+                    result.ints[p] = v;
+                }
+                break;
+            default:
+                for (int p = 0; p < length; p++) {
+                    byte v = (byte) values[p];
+                    if (v != values[p]) throw notRepresentable(values[p], precision);
+                    result.bytes[p] = v;
+                }
+        }
+        return result;
+    }
+    
+    private static IllegalArgumentException notRepresentable(double value, Precision precision) {
+        return new IllegalArgumentException("Value " + value + " cannot be stored as " + precision);
+    }
+    
+    // Integer results at the narrowest precision that holds them all
+    static CompactValues fromLongs(long[] values, int length) {
+        long maxAbs = 0;
+        for (int p = 0; p < length; p++) {
+            maxAbs = Math.max(maxAbs, Math.abs(values[p]));
+        }
+        CompactValues result = new CompactValues(Precision.forIntegers(maxAbs), length);
+        result.write(values, 0, 0, length);
+        return result;
+    }
+    
+    // Floating results rounded to precision, FLOAT32 or FLOAT64
+    static CompactValues fromDoubles(double[] values, int length, Precision precision) {
+        CompactValues result = new CompactValues(precision, length);
+        result.write(values, 0, 0, length);
+        return result;
+    }
+    
+    public double get(int p) {
+        switch (precision) {
+            case FLOAT64: return doubles[p];
+            case FLOAT32: return floats[p];
+            case INT32: return ints[p];
+            default: return bytes[p];
+        }
+    }
+    
+    // Integer precisions only
+    long getLong(int p) {
+        return precision == Precision.INT8 ? bytes[p] : ints[p];
+    }
+    
+    public double[] toDoubles() {
+        double[] result = new double[length];
+        read(0, result, 0, length);
+        return result;
+    }
+    
+    public long getByteSize() {
+        return (long) length * precision.bytes;
+    }
+    
+    double maxAbs() {
+        if (maxAbs < 0.0) {
+            double max = 0.0;
+            for (int p = 0; p < length; p++) {
+                max = Math.max(max, Math.abs(get(p)));
+            }
+            maxAbs = max;
+        }
+        return maxAbs;
+    }
+    
+    // dest[to + j] = this[from + j] for j in [0, n)
+    void read(int from, double[] dest, int to, int n) {
+        switch (precision) {
+            case FLOAT64:
+                System.arraycopy(doubles, from, dest, to, n);
+                break;
+            case FLOAT32:
+                for (int j = 0; j < n; j++) dest[to + j] = floats[from + j];
+                break;
+            case INT32:
+                for (int j = 0; j < n; j++) dest[to + j] = ints[from + j];
+                break;
+            default:
+                for (int j = 0; j < n; j++) dest[to + j] = bytes[from + j];
+        }
+    }
+    
+    // Integer precisions only
+    void read(int from, long[] dest, int to, int n) {
+        if (precision == Precision.INT8) {
+            for (int j = 0; j < n; j++) dest[to + j] = bytes[from + j];
+        } else {
+            for (int j = 0; j < n; j++) dest[to + j] = ints[from + j];
+        }
+    }
+    
+    // this[to + j] = src[from + j] for j in [0, n); the integer precisions
+    // take values already known to fit
+    void write(long[] src, int from, int to, int n) {
+        switch (precision) {
+            case FLOAT64:
+                for (int j = 0; j < n; j++) doubles[to + j] = src[from + j];
+                break;
+            case FLOAT32:
+                for (int j = 0; j < n; j++) floats[to + j] = src[from + j];
+                break;
+            case INT32:
+                for (int j = 0; j < n; j++) ints[to + j] = (int) src[from + j];
+                break;
+            default:
+                for (int j = 0; j < n; j++) bytes[to + j] = (byte) src[from + j];
+        }
+    }
+    
+    // Floating precisions only
+    void write(double[] src, int from, int to, int n) {
+        if (precision == Precision.FLOAT64) {
+            System.arraycopy(src, from, doubles, to, n);
+        } else if (precision == Precision.FLOAT32) {
+            for (int j = 0; j < n; j++) floats[to + j] = (float) src[from + j];
+        } else {
+            throw new IllegalStateException("Cannot round into " + precision);
+        }
+    }
+    
+    // acc[j] += alpha * this[from + j] for j in [0, n); integer precisions only
+    void axpy(long alpha, int from, long[] acc, int n) {
+        if (precision == Precision.INT8) {
+            for (int j = 0; j < n; j++) acc[j] += alpha * bytes[from + j];
+        } else {
+            for (int j = 0; j < n; j++) acc[j] += alpha * ints[from + j];
+        }
+    }
+    
+    // acc[j] += alpha * this[from + j] for j in [0, n)
+    void axpy(double alpha, int from, double[] acc, int n) {
+        switch (precision) {
+            case FLOAT64:
+                for (int j = 0; j < n; j++) acc[j] += alpha * doubles[from + j];
+                break;
+            case FLOAT32:
+                for (int j = 0; j < n; j++) acc[j] += alpha * floats[from + j];
+                break;
+            case INT32:
+                for (int j = 0; j < n; j++) acc[j] += alpha * ints[from + j];
+                break;
+            default:
+                for (int j = 0; j < n; j++) acc[j] += alpha * bytes[from + j];
+        }
+    }
+    
+    // acc[idx[p]] += alpha * this[p] for p in [from, to); integer
+    // precisions only
+    void scatter(long alpha, int from, int to, int[] idx, long[] acc) {
+        if (precision == Precision.INT8) {
+            for (int p = from; p < to; p++) acc[idx[p]] += alpha * bytes[p];
+        } else {
+            for (int p = from; p < to; p++) acc[idx[p]] += alpha * ints[p];
+        }
+    }
+    
+    // acc[idx[p]] += alpha * this[p] for p in [from, to)
+    void scatter(double alpha, int from, int to, int[] idx, double[] acc) {
+        switch (precision) {
+            case FLOAT64:
+                for (int p = from; p < to; p++) acc[idx[p]] += alpha * doubles[p];
+                break;
+            case FLOAT32:
+                for (int p = from; p < to; p++) acc[idx[p]] += alpha * floats[p];
+                break;
+            case INT32:
+                for (int p = from; p < to; p++) acc[idx[p]] += alpha * ints[p];
+                break;
+            default:
+                for (int p = from; p < to; p++) acc[idx[p]] += alpha * bytes[p];
+        }
+    }
+    
+    // Sum of this[p] * x[idx[p]] for p in [from, to)
+    double dot(int from, int to, int[] idx, double[] x) {
+        double sum = 0.0;
+        switch (precision) {
+            case FLOAT64:
+                for (int p = from; p < to; p++) sum += doubles[p] * x[idx[p]];
+                break;
+            case FLOAT32:
+                for (int p = from; p < to; p++) sum += floats[p] * x[idx[p]];
+                break;
+            case INT32:
+                for (int p = from; p < to; p++) sum += ints[p] * x[idx[p]];
+                break;
+            default:
+                for (int p = from; p < to; p++) sum += bytes[p] * x[idx[p]];
+        }
+        return sum;
+    }
+    
+    // result[target[p]] = this[p] for every p
+    CompactValues permute(int[] target) {
+        CompactValues result = new CompactValues(precision, length);
+        switch (precision) {
+            case FLOAT64:
+                for (int p = 0; p < length; p++) result.doubles[target[p]] = doubles[p];
+                break;
+            case FLOAT32:
+                for (int p = 0; p < length; p++) result.floats[target[p]] = floats[p];
+                break;
+            case INT32:
+                for (int p = 0; p < length; p++) result.ints[target[p]] = ints[p];
+                break;
+            default:
+                for (int p = 0; p < length; p++) result.bytes[target[p]] = bytes[p];
+        }
+        return result;
+    }
+    
+    // Writes rows [from, to) of the transpose of this row-major rows x cols
+    // matrix into result
+    void transposeInto(int rows, int cols, CompactValues result, int from, int to) {
+        for (int jj = from; jj < to; jj += TILE) {
+            int jEnd = Math.min(jj + TILE, to);
+            for (int ii = 0; ii < rows; ii += TILE) {
+                int iEnd = Math.min(ii + TILE, rows);
+                for (int j = jj; j < jEnd; j++) {
+                    int row = j * rows;
+                    switch (precision) {
+                        case FLOAT64:
+                            for (int i = ii; i < iEnd; i++) result.doubles[row + i] = doubles[i * cols + j];
+                            break;
+                        case FLOAT32:
+                            for (int i = ii; i < iEnd; i++) result.floats[row + i] = floats[i * cols + j];
+                            break;
+                        case INT32:
+                            for (int i = ii; i < iEnd; i++) result.ints[row + i] = ints[i * cols + j];
+                            break;
+                        default:
+                            for (int i = ii; i < iEnd; i++) result.bytes[row + i] = bytes[i * cols + j];
+                    }
+                }
+            }
+        }
+    }
+}
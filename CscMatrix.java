@@ -0,0 +1,38 @@
+import java.util.Arrays;
+
+// Compressed sparse column storage: the entries of column j live in
+// rowIdx/values[colPtr[j] .. colPtr[j + 1]), sorted by row.
+public class CscMatrix {
+    final int rows, cols;
+    final int[] colPtr;
+    final int[] rowIdx;
+    final double[] values;
+    
+    public CscMatrix(int r, int c, int[] colPtr, int[] rowIdx, double[] values) {
+        rows = r;
+        cols = c;
+        this.colPtr = colPtr;
+        this.rowIdx = rowIdx;
+        this.values = values;
+    }
+    
+    public double get(int row, int col) {
+        int p = Arrays.binarySearch(rowIdx, colPtr[col], colPtr[col + 1], row);
+        return p >= 0 ? values[p] : 0.0;
+    }
+    
+    public int getNonZeroCount() {
+        return colPtr[cols];
+    }
+    
+    // Materializes the row-major form of this matrix
+    public SparseMatrix toCsr() {
+        SparseMatrix columns = new SparseMatrix(cols, rows, colPtr, rowIdx, values);
+        int nnz = getNonZeroCount();
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[nnz];
+        double[] vals = new double[nnz];
+        SparseMatrix.transposeInto(columns, rowPtr, colIdx, vals);
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, vals);
+    }
+}
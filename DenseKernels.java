@@ -0,0 +1,16 @@
+// Inner loops of the dense kernels over ranges of flat arrays. The SIMD
+// implementation lives in VectorKernels, which needs the incubating
+// jdk.incubator.vector module, so it is loaded reflectively and the
+// scalar loops are used whenever it cannot be linked.
+public interface DenseKernels {
+    String getName();
+    
+    // z[p] = x[p] + y[p] for p in [from, to)
+    void add(double[] x, double[] y, double[] z, int from, int to);
+    
+    // z[p] = x[p] - y[p] for p in [from, to)
+    void subtract(double[] x, double[] y, double[] z, int from, int to);
+    
+    // z[zOff + j] += alpha * x[xOff + j] for j in [0, len)
+    void axpy(double alpha, double[] x, int xOff, double[] z, int zOff, int len);
+}
@@ -0,0 +1,58 @@
+// Dense matrix in a single row-major array: element (i, j) is data[i * cols + j].
+// Kernels fill data only while building a result, so like SparseMatrix the
+// version identifies the contents.
+public class DenseMatrix {
+    final int rows, cols;
+    final double[] data;
+    final long version;
+    
+    public DenseMatrix(int r, int c) {
+        this(r, c, SparseMatrix.nextVersion());
+    }
+    
+    // Zero matrix that will hold the contents of the matrix with this version
+    DenseMatrix(int r, int c, long version) {
+        this(r, c, new double[checkedSize(r, c)], version);
+    }
+    
+    public DenseMatrix(int r, int c, double[] data) {
+        this(r, c, data, SparseMatrix.nextVersion());
+    }
+    
+    DenseMatrix(int r, int c, double[] data, long version) {
+        rows = r;
+        cols = c;
+        this.data = data;
+        this.version = version;
+    }
+    
+    private static int checkedSize(int r, int c) {
+        long size = (long) r * c;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Dense matrix too large: " + r + "x" + c);
+        }
+        return (int) size;
+    }
+    
+    public static DenseMatrix fromArray(double[][] matrix) {
+        int r = matrix.length;
+        int c = r == 0 ? 0 : matrix[0].length;
+        DenseMatrix dense = new DenseMatrix(r, c);
+        for (int i = 0; i < r; i++) {
+            System.arraycopy(matrix[i], 0, dense.data, i * c, c);
+        }
+        return dense;
+    }
+    
+    public double get(int row, int col) {
+        return data[row * cols + col];
+    }
+    
+    public double[][] toArray() {
+        double[][] matrix = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(data, i * cols, matrix[i], 0, cols);
+        }
+        return matrix;
+    }
+}
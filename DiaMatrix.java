@@ -0,0 +1,256 @@
+import java.util.Arrays;
+
+// Diagonal storage: diagonal d holds the entries (i, i + offsets[d]) in
+// data[d * rows + i], for every row i, with zeros where the diagonal runs
+// off the matrix. Offsets are sorted and distinct. Banded matrices store
+// no indices at all, and every kernel is a stride-1 loop along whole
+// diagonals. Scattered patterns waste space on mostly-empty diagonals,
+// so fromSparse refuses patterns that would store more than MAX_FILL
+// values per non-zero (or per row, for very sparse matrices).
+public class DiaMatrix {
+    final int rows, cols;
+    final int[] offsets;
+    final double[] data;
+    
+    static final int MAX_FILL = 8;
+    
+    public DiaMatrix(int r, int c, int[] offsets, double[] data) {
+        rows = r;
+        cols = c;
+        this.offsets = offsets;
+        this.data = data;
+    }
+    
+    public static DiaMatrix fromSparse(SparseMatrix matrix) {
+        int rows = matrix.rows, cols = matrix.cols;
+        // Diagonal of (i, j) is j - i + rows - 1, in [0, rows + cols - 1)
+        boolean[] used = new boolean[Math.max(0, rows + cols - 1)];
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int p = matrix.rowPtr[i]; p < matrix.rowPtr[i + 1]; p++) {
+                int d = matrix.colIdx[p] - i + rows - 1;
+                if (!used[d]) {
+                    used[d] = true;
+                    count++;
+                }
+            }
+        }
+        long stored = (long) count * rows;
+        if (stored > (long) MAX_FILL * Math.max(matrix.getNonZeroCount(), rows)
+                || stored > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Pattern has " + count + " diagonals for "
+                    + matrix.getNonZeroCount() + " non-zeros; DIA would waste too much space");
+        }
+        int[] offsets = new int[count];
+        int[] slot = new int[used.length];
+        for (int d = 0, k = 0; d < used.length; d++) {
+            if (used[d]) {
+                slot[d] = k;
+                offsets[k++] = d - rows + 1;
+            }
+        }
+        double[] data = new double[count * rows];
+        for (int i = 0; i < rows; i++) {
+            for (int p = matrix.rowPtr[i]; p < matrix.rowPtr[i + 1]; p++) {
+                int d = slot[matrix.colIdx[p] - i + rows - 1];
+                data[d * rows + i] = matrix.values[p];
+            }
+        }
+        return new DiaMatrix(rows, cols, offsets, data);
+    }
+    
+    public SparseMatrix toSparse() {
+        int[] rowPtr = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            int count = 0;
+            for (int d = 0; d < offsets.length; d++) {
+                if (data[d * rows + i] != 0.0) count++;
+            }
+            rowPtr[i + 1] = rowPtr[i] + count;
+        }
+        int[] colIdx = new int[rowPtr[rows]];
+        double[] values = new double[rowPtr[rows]];
+        // Offsets are sorted, so each row comes out sorted by column
+        for (int i = 0, k = 0; i < rows; i++) {
+            for (int d = 0; d < offsets.length; d++) {
+                double v = data[d * rows + i];
+                if (v != 0.0) {
+                    colIdx[k] = i + offsets[d];
+                    values[k++] = v;
+                }
+            }
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+    }
+    
+    public double get(int row, int col) {
+        int d = Arrays.binarySearch(offsets, col - row);
+        return d >= 0 ? data[d * rows + row] : 0.0;
+    }
+    
+    public int getDiagonalCount() {
+        return offsets.length;
+    }
+    
+    public long getNonZeroCount() {
+        long count = 0;
+        for (double v : data) {
+            if (v != 0.0) count++;
+        }
+        return count;
+    }
+    
+    // Rows i for which column i + offset lies inside the matrix
+    private int firstRow(int offset) {
+        return Math.max(0, -offset);
+    }
+    
+    private int endRow(int offset) {
+        return (int) Math.min(rows, (long) cols - offset);
+    }
+    
+    // y = A x, one pass per diagonal
+    public void multiply(double[] x, double[] y) {
+        Arrays.fill(y, 0, rows, 0.0);
+        for (int d = 0; d < offsets.length; d++) {
+            int offset = offsets[d], base = d * rows;
+            for (int i = firstRow(offset), end = endRow(offset); i < end; i++) {
+                y[i] += data[base + i] * x[i + offset];
+            }
+        }
+    }
+    
+    // Diagonals of the sum are the union of both offset lists
+    public static DiaMatrix add(DiaMatrix a, DiaMatrix b, boolean subtract) {
+        checkSameSize(a, b);
+        int[] offsets = new int[a.offsets.length + b.offsets.length];
+        int count = 0;
+        for (int p = 0, q = 0; p < a.offsets.length || q < b.offsets.length; ) {
+            int oa = p < a.offsets.length ? a.offsets[p] : Integer.MAX_VALUE;
+            int ob = q < b.offsets.length ? b.offsets[q] : Integer.MAX_VALUE;
+            offsets[count++] = Math.min(oa, ob);
+            if (oa <= ob) p++;
+            if (ob <= oa) q++;
+        }
+        offsets = Arrays.copyOf(offsets, count);
+        int rows = a.rows;
+        if ((long) count * rows > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Sum has too many diagonals");
+        }
+        double[] data = new double[count * rows];
+        double sign = subtract ? -1.0 : 1.0;
+        for (int d = 0, p = 0, q = 0; d < count; d++) {
+            int base = d * rows;
+            if (p < a.offsets.length && a.offsets[p] == offsets[d]) {
+                System.arraycopy(a.data, p * rows, data, base, rows);
+                p++;
+            }
+            if (q < b.offsets.length && b.offsets[q] == offsets[d]) {
+                int from = q * rows;
+                for (int i = 0; i < rows; i++) {
+                    data[base + i] += sign * b.data[from + i];
+                }
+                q++;
+            }
+        }
+        return withoutZeroDiagonals(rows, a.cols, offsets, data);
+    }
+    
+    // Diagonal oa of A times diagonal ob of B lands on diagonal oa + ob:
+    // C(i, i + oa + ob) += A(i, i + oa) * B(i + oa, i + oa + ob)
+    public static DiaMatrix multiply(DiaMatrix a, DiaMatrix b) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + a.rows + "x" + a.cols + " by "
+                    + b.rows + "x" + b.cols);
+        }
+        int rows = a.rows, cols = b.cols;
+        // Offsets of C in [-(rows - 1), cols - 1], indexed from rows - 1
+        int[] slot = new int[Math.max(0, rows + cols - 1)];
+        Arrays.fill(slot, -1);
+        for (int oa : a.offsets) {
+            for (int ob : b.offsets) {
+                long o = (long) oa + ob;
+                if (o > -rows && o < cols) slot[(int) o + rows - 1] = 0;
+            }
+        }
+        int count = 0;
+        for (int s = 0; s < slot.length; s++) {
+            if (slot[s] == 0) slot[s] = count++;
+        }
+        if ((long) count * rows > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Product has too many diagonals");
+        }
+        int[] offsets = new int[count];
+        for (int s = 0; s < slot.length; s++) {
+            if (slot[s] >= 0) offsets[slot[s]] = s - rows + 1;
+        }
+        
+        double[] data = new double[count * rows];
+        for (int da = 0; da < a.offsets.length; da++) {
+            int oa = a.offsets[da], baseA = da * a.rows;
+            for (int db = 0; db < b.offsets.length; db++) {
+                int ob = b.offsets[db], baseB = db * b.rows;
+                long o = (long) oa + ob;
+                if (o <= -rows || o >= cols) continue;
+                int baseC = slot[(int) o + rows - 1] * rows;
+                // Row i of A must reach column i + oa of A, a row of B that
+                // reaches column i + oa + ob of B
+                int from = Math.max(a.firstRow(oa), b.firstRow(ob) - oa);
+                int to = Math.min(a.endRow(oa), b.endRow(ob) - oa);
+                for (int i = from; i < to; i++) {
+                    data[baseC + i] += a.data[baseA + i] * b.data[baseB + i + oa];
+                }
+            }
+        }
+        return withoutZeroDiagonals(rows, cols, offsets, data);
+    }
+    
+    // Drops the diagonals that came out all zero, e.g. where a sum cancels,
+    // as BsrMatrix drops zero blocks
+    private static DiaMatrix withoutZeroDiagonals(int rows, int cols, int[] offsets, double[] data) {
+        int w = 0;
+        for (int d = 0; d < offsets.length; d++) {
+            int from = d * rows;
+            boolean zero = true;
+            for (int i = from; i < from + rows && zero; i++) {
+                zero = data[i] == 0.0;
+            }
+            if (zero) continue;
+            if (w != d) {
+                offsets[w] = offsets[d];
+                System.arraycopy(data, from, data, w * rows, rows);
+            }
+            w++;
+        }
+        if (w == offsets.length) return new DiaMatrix(rows, cols, offsets, data);
+        return new DiaMatrix(rows, cols, Arrays.copyOf(offsets, w), Arrays.copyOf(data, w * rows));
+    }
+    
+    // Entry (i, i + o) moves to (i + o, i): diagonal o becomes -o, shifted
+    // by o rows
+    public DiaMatrix transpose() {
+        int count = offsets.length;
+        if ((long) count * cols > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Transpose has " + count + " diagonals of " + cols
+                    + " values, more than the array size limit");
+        }
+        int[] transposed = new int[count];
+        double[] result = new double[count * cols];
+        for (int d = 0; d < count; d++) {
+            int offset = offsets[d];
+            int td = count - 1 - d;
+            transposed[td] = -offset;
+            int from = firstRow(offset), to = endRow(offset);
+            if (from < to) {
+                System.arraycopy(data, d * rows + from, result, td * cols + from + offset, to - from);
+            }
+        }
+        return new DiaMatrix(cols, rows, transposed, result);
+    }
+    
+    private static void checkSameSize(DiaMatrix a, DiaMatrix b) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("Matrices must have the same dimensions");
+        }
+    }
+}
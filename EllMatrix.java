@@ -0,0 +1,233 @@
+import java.util.Arrays;
+
+// ELLPACK storage: every row has the same number of slots, width, and the
+// entries of row i sit in colIdx/values[i * width .. (i + 1) * width),
+// sorted by column and padded at the end with column -1 and value 0. With
+// no row pointers and a fixed stride, row loops have a constant trip count
+// and no dependent loads, which suits matrices whose rows are all about as
+// long, such as banded ones. One long row sets the width for all, so
+// fromSparse refuses patterns that would store more than MAX_FILL slots
+// per non-zero (or per row, for very sparse matrices). Kernel results are
+// kept however much padding they need, up to the array size limit.
+public class EllMatrix {
+    final int rows, cols, width;
+    final int[] colIdx;
+    final double[] values;
+    
+    static final int MAX_FILL = 8;
+    
+    public EllMatrix(int r, int c, int width, int[] colIdx, double[] values) {
+        rows = r;
+        cols = c;
+        this.width = width;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+    
+    public static EllMatrix fromSparse(SparseMatrix matrix) {
+        int width = 0;
+        for (int i = 0; i < matrix.rows; i++) {
+            width = Math.max(width, matrix.rowPtr[i + 1] - matrix.rowPtr[i]);
+        }
+        long slots = (long) width * matrix.rows;
+        long nonZeros = matrix.getNonZeroCount();
+        if (slots > (long) MAX_FILL * Math.max(nonZeros, matrix.rows)) {
+            throw new IllegalArgumentException("Longest row has " + width + " entries against "
+                    + nonZeros + " non-zeros; ELL would waste too much space");
+        }
+        return fromRows(matrix.rows, matrix.cols, width, matrix.rowPtr, matrix.colIdx, matrix.values);
+    }
+    
+    // Packs CSR arrays into rows of the given width, which must fit every row
+    private static EllMatrix fromRows(int rows, int cols, int width, int[] rowPtr, int[] colIdx,
+            double[] values) {
+        int slots = slots(rows, width);
+        int[] idx = new int[slots];
+        double[] vals = new double[slots];
+        Arrays.fill(idx, -1);
+        for (int i = 0; i < rows; i++) {
+            int length = rowPtr[i + 1] - rowPtr[i];
+            System.arraycopy(colIdx, rowPtr[i], idx, i * width, length);
+            System.arraycopy(values, rowPtr[i], vals, i * width, length);
+        }
+        return new EllMatrix(rows, cols, width, idx, vals);
+    }
+    
+    // Number of slots in rows x width, computed in long so it cannot wrap
+    private static int slots(int rows, int width) {
+        long slots = (long) width * rows;
+        if (slots > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("ELL result needs " + rows + " rows of " + width
+                    + " slots, more than the array size limit");
+        }
+        return (int) slots;
+    }
+    
+    public SparseMatrix toSparse() {
+        int[] rowPtr = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            rowPtr[i + 1] = rowPtr[i] + rowLength(i);
+        }
+        int[] idx = new int[rowPtr[rows]];
+        double[] vals = new double[rowPtr[rows]];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(colIdx, i * width, idx, rowPtr[i], rowPtr[i + 1] - rowPtr[i]);
+            System.arraycopy(values, i * width, vals, rowPtr[i], rowPtr[i + 1] - rowPtr[i]);
+        }
+        return new SparseMatrix(rows, cols, rowPtr, idx, vals);
+    }
+    
+    // Used slots of row i; padding is always at the end
+    int rowLength(int i) {
+        int from = i * width, p = from + width;
+        while (p > from && colIdx[p - 1] < 0) p--;
+        return p - from;
+    }
+    
+    public double get(int row, int col) {
+        int from = row * width;
+        int p = Arrays.binarySearch(colIdx, from, from + rowLength(row), col);
+        return p >= 0 ? values[p] : 0.0;
+    }
+    
+    public int getNonZeroCount() {
+        int count = 0;
+        for (int c : colIdx) {
+            if (c >= 0) count++;
+        }
+        return count;
+    }
+    
+    // y = A x. Padding slots multiply x[0] by zero instead of branching.
+    public void multiply(double[] x, double[] y) {
+        for (int i = 0; i < rows; i++) {
+            double sum = 0.0;
+            for (int p = i * width, end = p + width; p < end; p++) {
+                int j = colIdx[p];
+                sum += values[p] * x[j < 0 ? 0 : j];
+            }
+            y[i] = sum;
+        }
+    }
+    
+    // Row merge; the result is as wide as its longest merged row
+    public static EllMatrix add(EllMatrix a, EllMatrix b, boolean subtract) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("Matrices must have the same dimensions");
+        }
+        int rows = a.rows;
+        long capacity = (long) a.getNonZeroCount() + b.getNonZeroCount();
+        if (capacity > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Sum has too many non-zero elements");
+        }
+        int[] rowPtr = new int[rows + 1];
+        int[] idx = new int[(int) capacity];
+        double[] vals = new double[idx.length];
+        double sign = subtract ? -1.0 : 1.0;
+        int w = 0, width = 0;
+        for (int i = 0; i < rows; i++) {
+            int p = i * a.width, pEnd = p + a.rowLength(i);
+            int q = i * b.width, qEnd = q + b.rowLength(i);
+            int start = w;
+            while (p < pEnd || q < qEnd) {
+                int ca = p < pEnd ? a.colIdx[p] : Integer.MAX_VALUE;
+                int cb = q < qEnd ? b.colIdx[q] : Integer.MAX_VALUE;
+                double v = 0.0;
+                if (ca <= cb) v += a.values[p++];
+                if (cb <= ca) v += sign * b.values[q++];
+                if (v != 0.0) {
+                    idx[w] = Math.min(ca, cb);
+                    vals[w++] = v;
+                }
+            }
+            rowPtr[i + 1] = w;
+            width = Math.max(width, w - start);
+        }
+        return fromRows(rows, a.cols, width, rowPtr, idx, vals);
+    }
+    
+    // Gustavson SpGEMM over the fixed-width rows
+    public static EllMatrix multiply(EllMatrix a, EllMatrix b) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + a.rows + "x" + a.cols + " by "
+                    + b.rows + "x" + b.cols);
+        }
+        int rows = a.rows, cols = b.cols;
+        int[] marker = new int[cols];
+        Arrays.fill(marker, -1);
+        double[] accumulator = new double[cols];
+        int[] columns = new int[(int) Math.max(1, Math.min(cols, (long) a.width * b.width))];
+        
+        int[] rowPtr = new int[rows + 1];
+        int[] idx = new int[16];
+        double[] vals = new double[16];
+        int width = 0;
+        for (int i = 0; i < rows; i++) {
+            int end = 0;
+            for (int p = i * a.width, pEnd = p + a.width; p < pEnd; p++) {
+                int k = a.colIdx[p];
+                if (k < 0) break;
+                double valA = a.values[p];
+                for (int q = k * b.width, qEnd = q + b.width; q < qEnd; q++) {
+                    int j = b.colIdx[q];
+                    if (j < 0) break;
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        columns[end++] = j;
+                        accumulator[j] = valA * b.values[q];
+                    } else {
+                        accumulator[j] += valA * b.values[q];
+                    }
+                }
+            }
+            Arrays.sort(columns, 0, end);
+            int start = rowPtr[i];
+            if (start + end > idx.length) {
+                long grown = Math.max(2L * idx.length, (long) start + end);
+                if (grown > MatrixGenerator.MAX_NONZEROS) {
+                    throw new IllegalArgumentException("Product has too many non-zero elements");
+                }
+                idx = Arrays.copyOf(idx, (int) grown);
+                vals = Arrays.copyOf(vals, (int) grown);
+            }
+            int w = start;
+            for (int e = 0; e < end; e++) {
+                double v = accumulator[columns[e]];
+                if (v != 0.0) {
+                    idx[w] = columns[e];
+                    vals[w++] = v;
+                }
+            }
+            rowPtr[i + 1] = w;
+            width = Math.max(width, w - start);
+        }
+        return fromRows(rows, cols, width, rowPtr, idx, vals);
+    }
+    
+    // Counting sort by column; the transpose is as wide as the fullest column
+    public EllMatrix transpose() {
+        int[] count = new int[cols];
+        for (int c : colIdx) {
+            if (c >= 0) count[c]++;
+        }
+        int tWidth = 0;
+        for (int c : count) {
+            tWidth = Math.max(tWidth, c);
+        }
+        int[] idx = new int[slots(cols, tWidth)];
+        double[] vals = new double[idx.length];
+        Arrays.fill(idx, -1);
+        int[] next = new int[cols];
+        // Rows are visited in order, so each transposed row fills sorted
+        for (int i = 0; i < rows; i++) {
+            for (int p = i * width, end = p + width; p < end; p++) {
+                int j = colIdx[p];
+                if (j < 0) break;
+                int q = j * tWidth + next[j]++;
+                idx[q] = i;
+                vals[q] = values[p];
+            }
+        }
+        return new EllMatrix(cols, rows, tWidth, idx, vals);
+    }
+}
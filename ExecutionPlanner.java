@@ -0,0 +1,193 @@
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+// Cost-based choice between the dense and sparse kernels. For each
+// operation the planner estimates the work of both kernels from the
+// dimensions, nnz and (for multiplication) the exact number of
+// multiply-adds, adds the cost of materializing any input representation
+// that does not exist yet, and picks the cheaper one. The output format
+// follows the estimated fill of the result. Costs are in units of one
+// streamed dense multiply-add; the weights below reflect the extra index
+// loads and scattered accesses of the sparse kernels.
+public class ExecutionPlanner {
+    
+    public enum Operation { ADD, SUBTRACT, MULTIPLY, TRANSPOSE }
+    
+    public enum Kernel { DENSE, SPARSE }
+    
+    private static final double DENSE_STREAM = 1.0;      // per element, add/subtract
+    private static final double DENSE_FMA = 1.0;         // per multiply-add, tiled multiply
+    private static final double DENSE_TRANSPOSE = 2.0;   // per element, blocked transpose
+    private static final double SPARSE_MERGE = 4.0;      // per input nonzero, add/subtract
+    private static final double SPGEMM_FLOP = 10.0;      // per multiply-add, symbolic + numeric pass
+    private static final double SPGEMM_OUTPUT = 3.0;     // per output nonzero, row sort and copy
+    private static final double SPARSE_TRANSPOSE = 4.0;  // per nonzero, histogram + scatter
+    private static final double TO_DENSE = 1.0;          // per element, zero fill
+    private static final double TO_SPARSE = 1.5;         // per element, scan
+    
+    // Results at least this full are produced densely
+    private static final double DENSE_OUTPUT_FILL = 0.25;
+    
+    public static class Plan {
+        final Operation operation;
+        final Kernel kernel;
+        final boolean denseOutput;
+        final double denseCost, sparseCost;
+        final double estimatedFill;
+        final String reason;
+        
+        Plan(Operation operation, Kernel kernel, boolean denseOutput, double denseCost, double sparseCost,
+                double estimatedFill, String reason) {
+            this.operation = operation;
+            this.kernel = kernel;
+            this.denseOutput = denseOutput;
+            this.denseCost = denseCost;
+            this.sparseCost = sparseCost;
+            this.estimatedFill = estimatedFill;
+            this.reason = reason;
+        }
+        
+        public String describe() {
+            return String.format(Locale.ROOT, "%s kernel, %s output: %s; est. fill %.2f%%",
+                    kernel == Kernel.DENSE ? "dense" : "sparse", denseOutput ? "dense" : "sparse",
+                    reason, estimatedFill * 100.0);
+        }
+    }
+    
+    // b is ignored for TRANSPOSE
+    public static Plan plan(Operation operation, MatrixOperand a, MatrixOperand b) {
+        int outRows = operation == Operation.TRANSPOSE ? a.cols : a.rows;
+        int outCols = operation == Operation.TRANSPOSE ? a.rows
+                : operation == Operation.MULTIPLY ? b.cols : a.cols;
+        double outCells = (double) outRows * outCols;
+        double dA = a.getDensity();
+        double dB = b == null ? 0.0 : b.getDensity();
+        
+        double fill;
+        double denseKernel, sparseKernel;
+        switch (operation) {
+            case ADD:
+            case SUBTRACT:
+                fill = dA + dB - dA * dB;
+                denseKernel = DENSE_STREAM * a.rows * a.cols;
+                sparseKernel = SPARSE_MERGE * (a.getNonZeroCount() + b.getNonZeroCount()) + a.rows;
+                break;
+            case MULTIPLY:
+                fill = -Math.expm1(a.cols * Math.log1p(-dA * dB));
+                denseKernel = DENSE_FMA * a.rows * (double) a.cols * b.cols;
+                sparseKernel = SPGEMM_FLOP * multiplyAdds(a, b) + SPGEMM_OUTPUT * fill * outCells + a.rows;
+                break;
+            default:
+                fill = dA;
+                denseKernel = DENSE_TRANSPOSE * a.rows * a.cols;
+                sparseKernel = SPARSE_TRANSPOSE * a.getNonZeroCount() + a.rows + a.cols;
+                break;
+        }
+        
+        // Materializing inputs that only exist in the other form
+        double denseInputs = conversionToDense(a) + (operation == Operation.TRANSPOSE ? 0 : conversionToDense(b));
+        double sparseInputs = conversionToSparse(a) + (operation == Operation.TRANSPOSE ? 0 : conversionToSparse(b));
+        
+        boolean denseFeasible = fitsDense(a.rows, a.cols) && fitsDense(outRows, outCols)
+                && (b == null || operation == Operation.TRANSPOSE || fitsDense(b.rows, b.cols));
+        boolean denseOutput = denseFeasible && fill >= DENSE_OUTPUT_FILL;
+        
+        // Converting the kernel's native output to the chosen format
+        double denseCost = denseKernel + denseInputs + (denseOutput ? 0 : TO_SPARSE * outCells);
+        double sparseCost = sparseKernel + sparseInputs + (denseOutput ? TO_DENSE * outCells : 0);
+        
+        Kernel kernel;
+        String reason;
+        if (!denseFeasible) {
+            kernel = Kernel.SPARSE;
+            reason = String.format(Locale.ROOT, "dense form would need %.0f MB", outCells * 8 / (1 << 20));
+        } else if (denseCost < sparseCost) {
+            kernel = Kernel.DENSE;
+            reason = String.format(Locale.ROOT, "est. cost %.3g vs sparse %.3g", denseCost, sparseCost);
+        } else {
+            kernel = Kernel.SPARSE;
+            reason = String.format(Locale.ROOT, "est. cost %.3g vs dense %.3g", sparseCost, denseCost);
+        }
+        return new Plan(operation, kernel, denseOutput, denseFeasible ? denseCost : Double.POSITIVE_INFINITY,
+                sparseCost, Math.min(1.0, fill), reason);
+    }
+    
+    // Runs a plan, materializing only the representations it needs. The
+    // parallel sparse kernels are used when the pool has more than one thread.
+    public static MatrixOperand execute(Plan plan, MatrixOperand a, MatrixOperand b, ForkJoinPool pool,
+            DenseKernels kernels, OperationProgress progress) {
+        boolean parallel = pool.getParallelism() > 1;
+        if (plan.kernel == Kernel.DENSE) {
+            DenseMatrix x = a.dense();
+            DenseMatrix result;
+            switch (plan.operation) {
+                case ADD:
+                    result = MatrixKernels.performAddition(x, b.dense(), pool, kernels, progress);
+                    break;
+                case SUBTRACT:
+                    result = MatrixKernels.performSubtraction(x, b.dense(), pool, kernels, progress);
+                    break;
+                case MULTIPLY:
+                    result = MatrixKernels.performTraditionalMultiplication(x, b.dense(), pool, kernels, progress);
+                    break;
+                default:
+                    result = MatrixKernels.performTraditionalTranspose(x, pool, progress);
+                    break;
+            }
+            return plan.denseOutput
+                    ? new MatrixOperand(result)
+                    : new MatrixOperand(SparseMatrix.fromDense(result));
+        }
+        
+        SparseMatrix x = a.sparse();
+        SparseMatrix result;
+        switch (plan.operation) {
+            case ADD:
+                result = MatrixKernels.performSparseAddition(x, b.sparse(), progress);
+                break;
+            case SUBTRACT:
+                result = MatrixKernels.performSparseSubtraction(x, b.sparse(), progress);
+                break;
+            case MULTIPLY:
+                result = parallel
+                        ? MatrixKernels.performParallelSparseMultiplication(x, b.sparse(), pool, progress)
+                        : MatrixKernels.performSparseMultiplication(x, b.sparse(), progress);
+                break;
+            default:
+                result = parallel
+                        ? MatrixKernels.performParallelSparseTranspose(x, pool, progress)
+                        : MatrixKernels.performSparseTranspose(x, progress);
+                break;
+        }
+        return plan.denseOutput ? new MatrixOperand(result.toDense()) : new MatrixOperand(result);
+    }
+    
+    // Exact multiply-add count of the sparse product when both sparse forms
+    // exist (O(nnzA)); otherwise the uniform-density estimate.
+    private static double multiplyAdds(MatrixOperand a, MatrixOperand b) {
+        if (a.hasSparse() && b.hasSparse()) {
+            SparseMatrix x = a.sparse(), y = b.sparse();
+            double flops = 0;
+            for (int p = 0; p < x.getNonZeroCount(); p++) {
+                int k = x.colIdx[p];
+                flops += y.rowPtr[k + 1] - y.rowPtr[k];
+            }
+            return flops;
+        }
+        return (double) a.getNonZeroCount() * b.getNonZeroCount() / Math.max(1, a.cols);
+    }
+    
+    private static double conversionToDense(MatrixOperand m) {
+        return m.hasDense() ? 0.0 : TO_DENSE * m.rows * (double) m.cols + m.getNonZeroCount();
+    }
+    
+    private static double conversionToSparse(MatrixOperand m) {
+        return m.hasSparse() ? 0.0 : TO_SPARSE * m.rows * (double) m.cols;
+    }
+    
+    // Dense arrays must fit in one Java array and in a quarter of the heap
+    private static boolean fitsDense(int rows, int cols) {
+        double cells = (double) rows * cols;
+        return cells <= Integer.MAX_VALUE - 8 && cells * 8 <= Runtime.getRuntime().maxMemory() / 4;
+    }
+}
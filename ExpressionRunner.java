@@ -0,0 +1,33 @@
+import java.util.concurrent.ForkJoinPool;
+
+// The "fused" kernel: every operation is built as a MatrixExpression and
+// evaluated in one pass where the planner can fuse it.
+class ExpressionRunner extends BenchmarkRunner {
+    
+    ExpressionRunner(MatrixBenchmark benchmark) {
+        super(benchmark);
+    }
+    
+    Object run(ForkJoinPool pool) {
+        // Fresh leaves each run, so a transposed operand pays for
+        // building its CSC index inside the timed region
+        return expression(uncached(a), uncached(b)).evaluate(benchmark.threads == 1 ? null : pool,
+                OperationProgress.NONE);
+    }
+    
+    private MatrixExpression expression(SparseMatrix left, SparseMatrix right) {
+        String op = benchmark.op;
+        MatrixExpression x = left.lazy(), y = right.lazy();
+        if (op.equals("add")) return x.plus(y);
+        if (op.equals("subtract")) return x.minus(y);
+        if (op.equals("multiply")) return x.times(y);
+        if (op.equals("transpose-multiply")) return x.transpose().times(y);
+        if (op.equals("multiply-add")) return x.times(y).plus(c);
+        return x.transpose();
+    }
+    
+    // Same arrays and version as m, without its cached CSC index
+    private static SparseMatrix uncached(SparseMatrix m) {
+        return new SparseMatrix(m.rows, m.cols, m.rowPtr, m.colIdx, m.values, m.version);
+    }
+}
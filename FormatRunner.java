@@ -0,0 +1,61 @@
+import java.util.concurrent.ForkJoinPool;
+
+// The "dia", "ell" and "bsr" kernels (add, subtract, multiply and
+// transpose, single-threaded): the operands are converted to DiaMatrix,
+// EllMatrix or BsrMatrix before timing. A pattern the format refuses, or
+// a result past the array size limit, ends the run with status 1.
+class FormatRunner extends BenchmarkRunner {
+    private Object formatA, formatB;
+    
+    FormatRunner(MatrixBenchmark benchmark) {
+        super(benchmark);
+    }
+    
+    void prepare(ForkJoinPool pool) {
+        super.prepare(pool);
+        try {
+            formatA = toFormat(a);
+            formatB = toFormat(b);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Cannot convert to " + benchmark.kernel + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    private Object toFormat(SparseMatrix matrix) {
+        if (benchmark.kernel.equals("dia")) return DiaMatrix.fromSparse(matrix);
+        if (benchmark.kernel.equals("ell")) return EllMatrix.fromSparse(matrix);
+        return BsrMatrix.fromSparse(matrix, benchmark.blockSize);
+    }
+    
+    Object run(ForkJoinPool pool) {
+        try {
+            return runFormat();
+        } catch (IllegalArgumentException e) {
+            System.err.println(benchmark.kernel + " " + benchmark.op + " failed: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+    
+    private Object runFormat() {
+        String op = benchmark.op;
+        boolean subtract = op.equals("subtract");
+        if (benchmark.kernel.equals("dia")) {
+            DiaMatrix x = (DiaMatrix) formatA, y = (DiaMatrix) formatB;
+            if (op.equals("multiply")) return DiaMatrix.multiply(x, y);
+            if (op.equals("transpose")) return x.transpose();
+            return DiaMatrix.add(x, y, subtract);
+        }
+        if (benchmark.kernel.equals("ell")) {
+            EllMatrix x = (EllMatrix) formatA, y = (EllMatrix) formatB;
+            if (op.equals("multiply")) return EllMatrix.multiply(x, y);
+            if (op.equals("transpose")) return x.transpose();
+            return EllMatrix.add(x, y, subtract);
+        }
+        BsrMatrix x = (BsrMatrix) formatA, y = (BsrMatrix) formatB;
+        if (op.equals("multiply")) return BsrMatrix.multiply(x, y);
+        if (op.equals("transpose")) return x.transpose();
+        return BsrMatrix.add(x, y, subtract);
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+// The in-memory kernels: "sparse" on CSR, "dense" and "simd" on
+// DenseMatrix, and "auto", which lets ExecutionPlanner choose for every
+// run. Chained operations are evaluated one kernel at a time.
+class KernelRunner extends BenchmarkRunner {
+    private DenseMatrix denseA, denseB, denseC;
+    private DenseKernels kernels = MatrixKernels.SCALAR_KERNELS;
+    private ExecutionPlanner.Plan plan;
+    
+    KernelRunner(MatrixBenchmark benchmark) {
+        super(benchmark);
+    }
+    
+    void prepare(ForkJoinPool pool) {
+        super.prepare(pool);
+        if (isDense()) {
+            denseA = a.toDense();
+            denseB = b.toDense();
+            denseC = c == null ? null : c.toDense();
+            if (benchmark.kernel.equals("simd")) {
+                if (MatrixKernels.SIMD_KERNELS == null) {
+                    System.err.println("warning: jdk.incubator.vector unavailable, using scalar kernels");
+                } else {
+                    kernels = MatrixKernels.SIMD_KERNELS;
+                }
+            }
+        }
+    }
+    
+    private boolean isDense() {
+        return benchmark.kernel.equals("dense") || benchmark.kernel.equals("simd");
+    }
+    
+    String kernelName() {
+        return isDense() ? kernels.getName() : benchmark.kernel;
+    }
+    
+    String runKernelName() {
+        return plan == null ? null : "auto-" + plan.kernel.name().toLowerCase(Locale.ROOT);
+    }
+    
+    Object run(ForkJoinPool pool) {
+        if (benchmark.kernel.equals("auto")) {
+            // Planning is part of the measured time; operands start sparse
+            // as generated, so conversions are costed every run
+            MatrixOperand x = new MatrixOperand(a), y = new MatrixOperand(b);
+            ExecutionPlanner.Operation operation = ExecutionPlanner.Operation.valueOf(
+                    benchmark.op.toUpperCase(Locale.ROOT));
+            plan = ExecutionPlanner.plan(operation, x, y);
+            return ExecutionPlanner.execute(plan, x, y, pool, kernels, OperationProgress.NONE);
+        }
+        if (benchmark.kernel.equals("sparse")) return runSparse(pool);
+        return runDense(pool);
+    }
+    
+    private SparseMatrix runSparse(ForkJoinPool pool) {
+        OperationProgress none = OperationProgress.NONE;
+        String op = benchmark.op;
+        boolean serial = benchmark.threads == 1;
+        if (op.equals("transpose-multiply")) {
+            SparseMatrix t = serial
+                    ? MatrixKernels.performSparseTranspose(a, none)
+                    : MatrixKernels.performParallelSparseTranspose(a, pool, none);
+            return serial
+                    ? MatrixKernels.performSparseMultiplication(t, b, none)
+                    : MatrixKernels.performParallelSparseMultiplication(t, b, pool, none);
+        }
+        if (op.equals("multiply-add")) {
+            SparseMatrix product = serial
+                    ? MatrixKernels.performSparseMultiplication(a, b, none)
+                    : MatrixKernels.performParallelSparseMultiplication(a, b, pool, none);
+            return MatrixKernels.performSparseAddition(product, c, none);
+        }
+        if (op.equals("add")) return MatrixKernels.performSparseAddition(a, b, none);
+        if (op.equals("subtract")) return MatrixKernels.performSparseSubtraction(a, b, none);
+        if (op.equals("multiply")) {
+            return serial
+                    ? MatrixKernels.performSparseMultiplication(a, b, none)
+                    : MatrixKernels.performParallelSparseMultiplication(a, b, pool, none);
+        }
+        return serial
+                ? MatrixKernels.performSparseTranspose(a, none)
+                : MatrixKernels.performParallelSparseTranspose(a, pool, none);
+    }
+    
+    private DenseMatrix runDense(ForkJoinPool pool) {
+        OperationProgress none = OperationProgress.NONE;
+        String op = benchmark.op;
+        if (op.equals("transpose-multiply")) {
+            DenseMatrix t = MatrixKernels.performTraditionalTranspose(denseA, pool, none);
+            return MatrixKernels.performTraditionalMultiplication(t, denseB, pool, kernels, none);
+        }
+        if (op.equals("multiply-add")) {
+            DenseMatrix product = MatrixKernels.performTraditionalMultiplication(denseA, denseB, pool, kernels,
+                    none);
+            return MatrixKernels.performAddition(product, denseC, pool, kernels, none);
+        }
+        if (op.equals("add")) return MatrixKernels.performAddition(denseA, denseB, pool, kernels, none);
+        if (op.equals("subtract")) return MatrixKernels.performSubtraction(denseA, denseB, pool, kernels, none);
+        if (op.equals("multiply")) {
+            return MatrixKernels.performTraditionalMultiplication(denseA, denseB, pool, kernels, none);
+        }
+        return MatrixKernels.performTraditionalTranspose(denseA, pool, none);
+    }
+}
@@ -0,0 +1,287 @@
+import java.util.Arrays;
+
+// C = A * B kept up to date while A and B change a few entries at a time.
+// Updates go through setA/setB, which write to the mutable operands and
+// note what became stale; the next read of C repairs only that:
+//
+//   - a changed A(i, k) invalidates row i of C, which is recomputed in
+//     full with one Gustavson row pass;
+//   - a changed B(k, j) invalidates C(i, j) for each row i with
+//     A(i, k) != 0, and only those entries are recomputed, each as the dot
+//     product of row i of A with column j of B by point lookups.
+//
+// Rows of A holding a column are found through a column index of A's
+// pattern. Entries set to zero stay listed and merely cost a wasted
+// recompute, until a full list is compacted back to the live, distinct
+// rows before it grows. Recomputed rows are kept as overrides of the last
+// CSR result until result() folds them in.
+public class MaintainedProduct {
+    private final MutableSparseMatrix a, b;
+    
+    private SparseMatrix product;
+    private int[][] rowCols;
+    private double[][] rowValues;
+    private boolean overridden;
+    
+    // rowsOfColumn[k][0 .. columnSize[k]) include every row of A with an
+    // entry in column k, and possibly rows that have since lost it
+    private final int[][] rowsOfColumn;
+    private final int[] columnSize;
+    
+    // Stale rows of C, and stale (row of B, col) entries packed as row << 32 | col
+    private final boolean[] dirtyRow;
+    private int[] dirtyRows = new int[16];
+    private int dirtyCount;
+    private long[] changedB = new long[16];
+    private int changedCount;
+    
+    // Scratch for recomputing rows
+    private final MutableSparseMatrix.RowBuffer rowA = new MutableSparseMatrix.RowBuffer();
+    private final MutableSparseMatrix.RowBuffer rowB = new MutableSparseMatrix.RowBuffer();
+    // marker[j] == pass when column j is already in the row being computed
+    private final int[] marker;
+    private final double[] accumulator;
+    private int pass;
+    
+    public MaintainedProduct(MutableSparseMatrix a, MutableSparseMatrix b) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + a.rows + "x" + a.cols + " by "
+                    + b.rows + "x" + b.cols);
+        }
+        this.a = a;
+        this.b = b;
+        SparseMatrix snapshotA = a.snapshot();
+        product = MatrixKernels.performSparseMultiplication(snapshotA, b.snapshot(), OperationProgress.NONE);
+        rowCols = new int[a.rows][];
+        rowValues = new double[a.rows][];
+        
+        int[] colPtr = snapshotA.colPtr();
+        int[] rowIdx = snapshotA.rowIdx();
+        rowsOfColumn = new int[a.cols][];
+        columnSize = new int[a.cols];
+        for (int k = 0; k < a.cols; k++) {
+            rowsOfColumn[k] = Arrays.copyOfRange(rowIdx, colPtr[k], colPtr[k + 1]);
+            columnSize[k] = rowsOfColumn[k].length;
+        }
+        
+        dirtyRow = new boolean[a.rows];
+        marker = new int[b.cols];
+        accumulator = new double[b.cols];
+    }
+    
+    public synchronized void setA(int i, int k, double value) {
+        if (a.get(i, k) == 0.0 && value != 0.0) {
+            if (columnSize[k] == rowsOfColumn[k].length) compactColumn(k);
+            if (columnSize[k] == rowsOfColumn[k].length) {
+                rowsOfColumn[k] = Arrays.copyOf(rowsOfColumn[k], Math.max(4, 2 * columnSize[k]));
+            }
+            rowsOfColumn[k][columnSize[k]++] = i;
+        }
+        a.set(i, k, value);
+        if (!dirtyRow[i]) {
+            dirtyRow[i] = true;
+            if (dirtyCount == dirtyRows.length) dirtyRows = Arrays.copyOf(dirtyRows, 2 * dirtyCount);
+            dirtyRows[dirtyCount++] = i;
+        }
+    }
+    
+    // Drops rows that no longer have an entry in column k, and repeats of
+    // rows deleted and set again, so churn cannot grow the list without bound
+    private void compactColumn(int k) {
+        int[] rows = rowsOfColumn[k];
+        int size = 0;
+        for (int r = 0; r < columnSize[k]; r++) {
+            if (a.get(rows[r], k) != 0.0) rows[size++] = rows[r];
+        }
+        Arrays.sort(rows, 0, size);
+        int unique = 0;
+        for (int r = 0; r < size; r++) {
+            if (unique == 0 || rows[r] != rows[unique - 1]) rows[unique++] = rows[r];
+        }
+        columnSize[k] = unique;
+    }
+    
+    public synchronized void setB(int k, int j, double value) {
+        b.set(k, j, value);
+        if (changedCount == changedB.length) changedB = Arrays.copyOf(changedB, 2 * changedCount);
+        changedB[changedCount++] = ((long) k << 32) | j;
+    }
+    
+    public synchronized double get(int i, int j) {
+        refresh();
+        if (rowCols[i] != null) {
+            int p = Arrays.binarySearch(rowCols[i], j);
+            return p >= 0 ? rowValues[i][p] : 0.0;
+        }
+        return product.get(i, j);
+    }
+    
+    // The current product as CSR; a new SparseMatrix only if C changed
+    public synchronized SparseMatrix result() {
+        refresh();
+        if (overridden) {
+            product = foldOverrides();
+            Arrays.fill(rowCols, null);
+            Arrays.fill(rowValues, null);
+            overridden = false;
+        }
+        return product;
+    }
+    
+    // Number of stale rows and B entries waiting for the next read
+    public synchronized int getPendingUpdates() {
+        return dirtyCount + changedCount;
+    }
+    
+    private void refresh() {
+        if (dirtyCount == 0 && changedCount == 0) return;
+        
+        // Entries of C stale through B, outside rows recomputed anyway,
+        // as sorted unique (row, col) keys
+        long[] stale = new long[16];
+        int staleCount = 0;
+        for (int c = 0; c < changedCount; c++) {
+            int k = (int) (changedB[c] >>> 32);
+            int j = (int) changedB[c];
+            for (int r = 0; r < columnSize[k]; r++) {
+                int i = rowsOfColumn[k][r];
+                if (dirtyRow[i]) continue;
+                if (staleCount == stale.length) stale = Arrays.copyOf(stale, 2 * staleCount);
+                stale[staleCount++] = ((long) i << 32) | j;
+            }
+        }
+        Arrays.sort(stale, 0, staleCount);
+        
+        for (int d = 0; d < dirtyCount; d++) {
+            recomputeRow(dirtyRows[d]);
+            dirtyRow[dirtyRows[d]] = false;
+        }
+        for (int s = 0; s < staleCount; ) {
+            int i = (int) (stale[s] >>> 32);
+            a.readRow(i, rowA);
+            for (; s < staleCount && (int) (stale[s] >>> 32) == i; s++) {
+                if (s > 0 && stale[s] == stale[s - 1]) continue;
+                int j = (int) stale[s];
+                double sum = 0.0;
+                for (int q = 0; q < rowA.size; q++) {
+                    sum += rowA.values[q] * b.get(rowA.cols[q], j);
+                }
+                setEntry(i, j, sum);
+            }
+        }
+        dirtyCount = 0;
+        changedCount = 0;
+    }
+    
+    // Gustavson pass for one row of C, stored as an override
+    private void recomputeRow(int i) {
+        pass++;
+        a.readRow(i, rowA);
+        int[] columns = new int[16];
+        int end = 0;
+        for (int p = 0; p < rowA.size; p++) {
+            double valA = rowA.values[p];
+            b.readRow(rowA.cols[p], rowB);
+            for (int q = 0; q < rowB.size; q++) {
+                int j = rowB.cols[q];
+                if (marker[j] != pass) {
+                    marker[j] = pass;
+                    if (end == columns.length) columns = Arrays.copyOf(columns, 2 * end);
+                    columns[end++] = j;
+                    accumulator[j] = valA * rowB.values[q];
+                } else {
+                    accumulator[j] += valA * rowB.values[q];
+                }
+            }
+        }
+        Arrays.sort(columns, 0, end);
+        int count = 0;
+        for (int e = 0; e < end; e++) {
+            if (accumulator[columns[e]] != 0.0) columns[count++] = columns[e];
+        }
+        double[] values = new double[count];
+        for (int e = 0; e < count; e++) {
+            values[e] = accumulator[columns[e]];
+        }
+        rowCols[i] = Arrays.copyOf(columns, count);
+        rowValues[i] = values;
+        overridden = true;
+    }
+    
+    // Sets C(i, j) in the override of row i, copying the row out of the
+    // CSR product first if needed
+    private void setEntry(int i, int j, double value) {
+        if (rowCols[i] == null) {
+            int from = product.rowPtr[i], to = product.rowPtr[i + 1];
+            rowCols[i] = Arrays.copyOfRange(product.colIdx, from, to);
+            rowValues[i] = Arrays.copyOfRange(product.values, from, to);
+            overridden = true;
+        }
+        int[] cols = rowCols[i];
+        int p = Arrays.binarySearch(cols, j);
+        if (p >= 0) {
+            if (value != 0.0) {
+                rowValues[i][p] = value;
+            } else {
+                rowCols[i] = remove(cols, p);
+                rowValues[i] = remove(rowValues[i], p);
+            }
+        } else if (value != 0.0) {
+            int at = -p - 1;
+            rowCols[i] = insert(cols, at, j);
+            rowValues[i] = insert(rowValues[i], at, value);
+        }
+    }
+    
+    private SparseMatrix foldOverrides() {
+        int rows = product.rows;
+        int[] rowPtr = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            int length = rowCols[i] != null ? rowCols[i].length : product.rowPtr[i + 1] - product.rowPtr[i];
+            rowPtr[i + 1] = rowPtr[i] + length;
+        }
+        int[] colIdx = new int[rowPtr[rows]];
+        double[] values = new double[rowPtr[rows]];
+        for (int i = 0; i < rows; i++) {
+            if (rowCols[i] != null) {
+                System.arraycopy(rowCols[i], 0, colIdx, rowPtr[i], rowCols[i].length);
+                System.arraycopy(rowValues[i], 0, values, rowPtr[i], rowValues[i].length);
+            } else {
+                int from = product.rowPtr[i];
+                System.arraycopy(product.colIdx, from, colIdx, rowPtr[i], rowPtr[i + 1] - rowPtr[i]);
+                System.arraycopy(product.values, from, values, rowPtr[i], rowPtr[i + 1] - rowPtr[i]);
+            }
+        }
+        return new SparseMatrix(rows, product.cols, rowPtr, colIdx, values);
+    }
+    
+    private static int[] insert(int[] array, int at, int value) {
+        int[] grown = new int[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, at);
+        grown[at] = value;
+        System.arraycopy(array, at, grown, at + 1, array.length - at);
+        return grown;
+    }
+    
+    private static double[] insert(double[] array, int at, double value) {
+        double[] grown = new double[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, at);
+        grown[at] = value;
+        System.arraycopy(array, at, grown, at + 1, array.length - at);
+        return grown;
+    }
+    
+    private static int[] remove(int[] array, int at) {
+        int[] shrunk = new int[array.length - 1];
+        System.arraycopy(array, 0, shrunk, 0, at);
+        System.arraycopy(array, at + 1, shrunk, at, array.length - at - 1);
+        return shrunk;
+    }
+    
+    private static double[] remove(double[] array, int at) {
+        double[] shrunk = new double[array.length - 1];
+        System.arraycopy(array, 0, shrunk, 0, at);
+        System.arraycopy(array, at + 1, shrunk, at, array.length - at - 1);
+        return shrunk;
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// maintained-multiply keeps A*B in a MaintainedProduct; each run applies
+// --updates random point updates, split between A and B, then reads the
+// product, so it compares directly with a full multiply. Updates draw
+// positions from seed + 3 and values 1..9, with one in four deleting the
+// entry instead.
+class MaintainedRunner extends BenchmarkRunner {
+    private MaintainedProduct product;
+    private SplittableRandom random;
+    
+    MaintainedRunner(MatrixBenchmark benchmark) {
+        super(benchmark);
+    }
+    
+    void prepare(ForkJoinPool pool) {
+        super.prepare(pool);
+        product = new MaintainedProduct(new MutableSparseMatrix(a), new MutableSparseMatrix(b));
+        random = new SplittableRandom(benchmark.seed + 3);
+    }
+    
+    String kernelName() {
+        return "sparse";
+    }
+    
+    Object run(ForkJoinPool pool) {
+        int size = benchmark.size;
+        for (int u = 0; u < benchmark.updates; u++) {
+            int i = random.nextInt(size), j = random.nextInt(size);
+            double value = random.nextInt(4) == 0 ? 0.0 : random.nextInt(9) + 1;
+            if (u % 2 == 0) product.setA(i, j, value);
+            else product.setB(i, j, value);
+        }
+        return product.result();
+    }
+}
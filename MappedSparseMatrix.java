@@ -0,0 +1,106 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+// CSR matrix served directly from a memory-mapped file written by
+// SparseMatrixIO. Entries are paged in on access; nothing is copied to
+// the heap until toSparseMatrix() is called. Matrices from
+// SparseMatrixIO.map are read-only; those from SparseMatrixIO.create are
+// filled through the package-private setters.
+public class MappedSparseMatrix {
+    final int rows, cols;
+    private final int nnz;
+    private final IntBuffer[] rowPtr, colIdx;
+    private final DoubleBuffer[] values;
+    
+    MappedSparseMatrix(int rows, int cols, int nnz, IntBuffer[] rowPtr, IntBuffer[] colIdx,
+            DoubleBuffer[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.nnz = nnz;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+    
+    public int getNonZeroCount() {
+        return nnz;
+    }
+    
+    // Entries of row i occupy positions rowStart(i) .. rowStart(i + 1)
+    public int rowStart(int i) {
+        return intAt(rowPtr, i);
+    }
+    
+    public int colIndex(int p) {
+        return intAt(colIdx, p);
+    }
+    
+    public double value(int p) {
+        return values[p >>> SparseMatrixIO.SEGMENT_SHIFT].get(p & SparseMatrixIO.SEGMENT_MASK);
+    }
+    
+    void setRowStart(int i, int p) {
+        rowPtr[i >>> SparseMatrixIO.SEGMENT_SHIFT].put(i & SparseMatrixIO.SEGMENT_MASK, p);
+    }
+    
+    void setEntry(int p, int col, double value) {
+        colIdx[p >>> SparseMatrixIO.SEGMENT_SHIFT].put(p & SparseMatrixIO.SEGMENT_MASK, col);
+        values[p >>> SparseMatrixIO.SEGMENT_SHIFT].put(p & SparseMatrixIO.SEGMENT_MASK, value);
+    }
+    
+    public double get(int row, int col) {
+        int lo = rowStart(row), hi = rowStart(row + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = colIndex(mid);
+            if (c < col) lo = mid + 1;
+            else if (c > col) hi = mid - 1;
+            else return value(mid);
+        }
+        return 0.0;
+    }
+    
+    // y = A x straight from the mapping
+    public void multiply(double[] x, double[] y) {
+        int p = rowStart(0);
+        for (int i = 0; i < rows; i++) {
+            int end = rowStart(i + 1);
+            double sum = 0.0;
+            for (; p < end; p++) {
+                sum += value(p) * x[colIndex(p)];
+            }
+            y[i] = sum;
+        }
+    }
+    
+    // Copies the sections onto the heap with bulk gets
+    public SparseMatrix toSparseMatrix() {
+        int[] ptr = new int[rows + 1];
+        int[] idx = new int[nnz];
+        double[] vals = new double[nnz];
+        copy(rowPtr, ptr);
+        copy(colIdx, idx);
+        int offset = 0;
+        for (DoubleBuffer segment : values) {
+            DoubleBuffer view = segment.duplicate();
+            int length = view.remaining();
+            view.get(vals, offset, length);
+            offset += length;
+        }
+        return new SparseMatrix(rows, cols, ptr, idx, vals);
+    }
+    
+    private static int intAt(IntBuffer[] segments, int p) {
+        return segments[p >>> SparseMatrixIO.SEGMENT_SHIFT].get(p & SparseMatrixIO.SEGMENT_MASK);
+    }
+    
+    private static void copy(IntBuffer[] segments, int[] target) {
+        int offset = 0;
+        for (IntBuffer segment : segments) {
+            IntBuffer view = segment.duplicate();
+            int length = view.remaining();
+            view.get(target, offset, length);
+            offset += length;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+// Headless command-line entry point for timing the matrix kernels on
+// benchmark hosts. Example:
+//
+//   java -cp out MatrixBenchmark --size 2000 --density 0.01 --seed 42 \
+//       --op multiply --kernel sparse --threads 8 --warmup 3 --repeat 10 --format csv
+//
+// Matrix A is generated from the seed, B from seed + 1 and, for
+// multiply-add (A*B + C), C from seed + 2. transpose-multiply is A^T*B.
+// --input-a and --input-b replace the generated A and B with square
+// matrices read from Matrix Market (.mtx) or SparseMatrixIO binary files,
+// loaded before anything is generated; --size is then taken from the
+// first file and the other must match it. --pattern banded keeps
+// generated entries within --bandwidth of the diagonal and --pattern
+// block fills whole --block-size square blocks, at the given density.
+//
+// This class parses the options, builds the operands and times the runs;
+// each mode is a BenchmarkRunner. KernelRunner runs the sparse, dense,
+// simd and auto kernels, ExpressionRunner "fused", OutOfCoreRunner
+// "out-of-core" and FormatRunner "dia", "ell" and "bsr". CompactRunner
+// handles --precision other than float64, VectorRunner spmv,
+// spmv-transpose and cg, and MaintainedRunner maintained-multiply.
+// Warm-up runs are executed but not reported; each measured run is
+// printed as CSV or as one JSON object with a summary. Measured runs are
+// also recorded in OperationMetrics and emitted as JFR events; --metrics
+// writes the OperationMetrics summary as JSON ("-" for stdout) after the
+// run.
+public class MatrixBenchmark {
+    
+    private static final String USAGE =
+            "Usage: MatrixBenchmark [--size n] [--density d] [--seed s]\n"
+            + "                       [--op add|subtract|multiply|transpose|transpose-multiply|multiply-add|\n"
+            + "                             spmv|spmv-transpose|cg|maintained-multiply]\n"
+            + "                       [--kernel dense|simd|sparse|auto|fused|out-of-core|dia|ell|bsr]\n"
+            + "                       [--threads t] [--pattern uniform|banded|block] [--bandwidth w]\n"
+            + "                       [--block-size b] [--precision float64|float32|int32|int8|auto]\n"
+            + "                       [--warmup w] [--repeat r] [--format csv|json]\n"
+            + "                       [--input-a file] [--input-b file] [--tile n] [--work-dir dir]\n"
+            + "                       [--metrics file|-] [--updates u]";
+    
+    int size = 1000;
+    double density = 0.01;
+    long seed = 42;
+    String op = "multiply";
+    String kernel = "sparse";
+    int threads = Runtime.getRuntime().availableProcessors();
+    int warmup = 3;
+    int repeat = 10;
+    String format = "csv";
+    String inputA, inputB;
+    int tile = 4096;
+    String workDir = System.getProperty("java.io.tmpdir");
+    String metricsFile;
+    int updates = 10;
+    String pattern = "uniform";
+    int bandwidth = 16;
+    int blockSize = 4;
+    String precision = "float64";
+    
+    // Matrices read from --input-a and --input-b, before anything is generated
+    SparseMatrix loadedA, loadedB;
+    
+    public static void main(String[] args) {
+        MatrixBenchmark benchmark = new MatrixBenchmark();
+        try {
+            benchmark.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        benchmark.run();
+    }
+    
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (name.equals("--help") || name.equals("-h")) {
+                System.out.println(USAGE);
+                System.exit(0);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            try {
+                if (name.equals("--size")) size = Integer.parseInt(value);
+                else if (name.equals("--density")) density = Double.parseDouble(value);
+                else if (name.equals("--seed")) seed = Long.parseLong(value);
+                else if (name.equals("--op")) op = value;
+                else if (name.equals("--kernel")) kernel = value;
+                else if (name.equals("--threads")) threads = Integer.parseInt(value);
+                else if (name.equals("--warmup")) warmup = Integer.parseInt(value);
+                else if (name.equals("--repeat")) repeat = Integer.parseInt(value);
+                else if (name.equals("--format")) format = value;
+                else if (name.equals("--input-a")) inputA = value;
+                else if (name.equals("--input-b")) inputB = value;
+                else if (name.equals("--tile")) tile = Integer.parseInt(value);
+                else if (name.equals("--work-dir")) workDir = value;
+                else if (name.equals("--metrics")) metricsFile = value;
+                else if (name.equals("--updates")) updates = Integer.parseInt(value);
+                else if (name.equals("--pattern")) pattern = value;
+                else if (name.equals("--bandwidth")) bandwidth = Integer.parseInt(value);
+                else if (name.equals("--block-size")) blockSize = Integer.parseInt(value);
+                else if (name.equals("--precision")) precision = value;
+                else throw new IllegalArgumentException("Unknown option " + name);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+            }
+        }
+        
+        if (size <= 0) throw new IllegalArgumentException("--size must be at least 1");
+        if (density < 0 || density > 1) throw new IllegalArgumentException("--density must be between 0 and 1");
+        if (threads <= 0) throw new IllegalArgumentException("--threads must be at least 1");
+        if (warmup < 0 || repeat <= 0) throw new IllegalArgumentException("--warmup must be >= 0 and --repeat >= 1");
+        if (!Arrays.asList("add", "subtract", "multiply", "transpose", "transpose-multiply", "multiply-add",
+                "spmv", "spmv-transpose", "cg", "maintained-multiply").contains(op)) {
+            throw new IllegalArgumentException("Unknown operation " + op);
+        }
+        if ((isVectorOperation() || op.equals("maintained-multiply")) && !kernel.equals("sparse")) {
+            throw new IllegalArgumentException("--op " + op + " runs only with --kernel sparse");
+        }
+        if (!Arrays.asList("dense", "simd", "sparse", "auto", "fused", "out-of-core", "dia", "ell", "bsr")
+                .contains(kernel)) {
+            throw new IllegalArgumentException("Unknown kernel " + kernel);
+        }
+        if (isFormatKernel() && op.contains("-")) {
+            throw new IllegalArgumentException("--kernel " + kernel
+                    + " supports only add, subtract, multiply and transpose");
+        }
+        if (!Arrays.asList("uniform", "banded", "block").contains(pattern)) {
+            throw new IllegalArgumentException("Unknown pattern " + pattern);
+        }
+        if (op.equals("cg") && !pattern.equals("uniform")) {
+            throw new IllegalArgumentException("--op cg generates its own SPD matrix; --pattern must be uniform");
+        }
+        if (!precision.equals("auto")) Precision.parse(precision);
+        if (isCompact() && !kernel.equals("sparse") && !kernel.equals("dense")) {
+            throw new IllegalArgumentException("--precision " + precision + " runs only with --kernel sparse or dense");
+        }
+        if (isCompact() && !Arrays.asList("add", "subtract", "multiply", "transpose", "spmv").contains(op)) {
+            throw new IllegalArgumentException("--precision " + precision
+                    + " supports only add, subtract, multiply, transpose and spmv");
+        }
+        if (bandwidth < 0) throw new IllegalArgumentException("--bandwidth must be >= 0");
+        if (blockSize <= 0) throw new IllegalArgumentException("--block-size must be at least 1");
+        if (kernel.equals("out-of-core") && !op.equals("multiply")) {
+            throw new IllegalArgumentException("--kernel out-of-core supports only multiply");
+        }
+        if (tile <= 0) throw new IllegalArgumentException("--tile must be at least 1");
+        if (updates < 0) throw new IllegalArgumentException("--updates must be >= 0");
+        if (kernel.equals("auto") && op.contains("-")) {
+            throw new IllegalArgumentException("--kernel auto supports only add, subtract, multiply and transpose");
+        }
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+    
+    void run() {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        // Vector operations only use A
+        loadInputs(!isVectorOperation());
+        BenchmarkRunner runner = createRunner();
+        runner.prepare(pool);
+        
+        long[] samples = new long[repeat];
+        long nnzOut = 0;
+        for (int iteration = -warmup; iteration < repeat; iteration++) {
+            if (iteration == 0) OperationMetrics.GLOBAL.reset();
+            OperationMetrics.Sample sample = OperationMetrics.GLOBAL.start(op, runner.kernelName(),
+                    runner.inputNonZeros());
+            Object result = runner.run(pool);
+            long elapsed = sample.finish(result, runner.runKernelName());
+            if (iteration >= 0) {
+                samples[iteration] = elapsed;
+                nnzOut = OperationMetrics.nonZeros(result);
+            }
+        }
+        pool.shutdown();
+        runner.finish();
+        
+        String kernelName = runner.runKernelName() != null ? runner.runKernelName() : runner.kernelName();
+        if (format.equals("csv")) {
+            printCsv(kernelName, runner.a, runner.b, nnzOut, samples);
+        } else {
+            printJson(kernelName, runner.a, runner.b, nnzOut, samples);
+        }
+        writeMetrics();
+    }
+    
+    private BenchmarkRunner createRunner() {
+        if (isVectorOperation()) return new VectorRunner(this);
+        if (op.equals("maintained-multiply")) return new MaintainedRunner(this);
+        if (kernel.equals("out-of-core")) return new OutOfCoreRunner(this);
+        if (kernel.equals("fused")) return new ExpressionRunner(this);
+        if (isFormatKernel()) return new FormatRunner(this);
+        if (isCompact()) return new CompactRunner(this);
+        return new KernelRunner(this);
+    }
+    
+    private void writeMetrics() {
+        if (metricsFile == null) return;
+        if (metricsFile.equals("-")) {
+            System.out.print(OperationMetrics.GLOBAL.toJson());
+            return;
+        }
+        try {
+            OperationMetrics.GLOBAL.writeJson(Paths.get(metricsFile));
+        } catch (IOException e) {
+            System.err.println("Cannot write " + metricsFile + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    // Loads every input file before any operand is generated. The first
+    // file loaded fixes the size, so the rest of the run works as if it
+    // had been generated, and every later file must match it.
+    private void loadInputs(boolean withB) {
+        if (inputA != null) loadedA = loadInput(inputA, false);
+        if (withB && inputB != null) loadedB = loadInput(inputB, loadedA != null);
+    }
+    
+    // A square input; when sized is set it must also be size x size
+    private SparseMatrix loadInput(String file, boolean sized) {
+        SparseMatrix matrix;
+        try {
+            matrix = SparseMatrixIO.readFile(Paths.get(file));
+        } catch (IOException e) {
+            System.err.println("Cannot read " + file + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+        if (matrix.rows != matrix.cols || (sized && matrix.rows != size)) {
+            System.err.println(file + " is " + matrix.rows + "x" + matrix.cols
+                    + "; inputs must be square and of the same size");
+            System.exit(1);
+        }
+        size = matrix.rows;
+        return matrix;
+    }
+    
+    // A as loaded, or generated from the seed
+    SparseMatrix operandA(ForkJoinPool pool) {
+        return loadedA != null ? loadedA : generate(seed, pool);
+    }
+    
+    // B as loaded, or generated from seed + 1; transpose has no B and
+    // reports an empty one
+    SparseMatrix operandB(ForkJoinPool pool) {
+        if (loadedB != null) return loadedB;
+        return op.equals("transpose") ? new SparseMatrix(size, size) : generate(seed + 1, pool);
+    }
+    
+    // Generated n x n matrix of the requested pattern
+    SparseMatrix generate(long matrixSeed, ForkJoinPool pool) {
+        OperationProgress none = OperationProgress.NONE;
+        if (pattern.equals("banded")) {
+            return MatrixGenerator.generateBandedMatrix(size, bandwidth, density, matrixSeed, pool, none);
+        }
+        if (pattern.equals("block")) {
+            return MatrixGenerator.generateBlockMatrix(size, blockSize, density, matrixSeed, pool, none);
+        }
+        return MatrixGenerator.generateSparseMatrix(size, density, matrixSeed, pool, none);
+    }
+    
+    boolean isCompact() {
+        return !precision.equals("float64");
+    }
+    
+    private boolean isFormatKernel() {
+        return kernel.equals("dia") || kernel.equals("ell") || kernel.equals("bsr");
+    }
+    
+    private boolean isVectorOperation() {
+        return op.equals("spmv") || op.equals("spmv-transpose") || op.equals("cg");
+    }
+    
+    private void printCsv(String kernelName, SparseMatrix a, SparseMatrix b, long nnzOut, long[] samples) {
+        System.out.println("operation,kernel,size,density,seed,threads,iteration,nanos,nnz_a,nnz_b,nnz_out");
+        for (int i = 0; i < samples.length; i++) {
+            System.out.println(String.format(Locale.ROOT, "%s,%s,%d,%s,%d,%d,%d,%d,%d,%d,%d",
+                    op, kernelName, size, density, seed, threads, i, samples[i],
+                    a.getNonZeroCount(), b.getNonZeroCount(), nnzOut));
+        }
+    }
+    
+    private void printJson(String kernelName, SparseMatrix a, SparseMatrix b, long nnzOut, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < samples.length; i++) {
+            total += samples[i];
+            if (i > 0) list.append(',');
+            list.append(samples[i]);
+        }
+        System.out.println(String.format(Locale.ROOT,
+                "{\"operation\":\"%s\",\"kernel\":\"%s\",\"size\":%d,\"density\":%s,\"seed\":%d,"
+                + "\"threads\":%d,\"warmup\":%d,\"nnzA\":%d,\"nnzB\":%d,\"nnzOut\":%d,"
+                + "\"samplesNanos\":[%s],\"minNanos\":%d,\"medianNanos\":%d,\"meanNanos\":%d}",
+                op, kernelName, size, density, seed, threads, warmup,
+                a.getNonZeroCount(), b.getNonZeroCount(), nnzOut,
+                list, sorted[0], sorted[sorted.length / 2], total / samples.length));
+    }
+}
@@ -0,0 +1,420 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Lazy expressions over sparse matrices, e.g.
+//
+//   SparseMatrix r = a.lazy().transpose().times(b).plus(c).evaluate();
+//
+// Building an expression only records the DAG. evaluate() first pushes
+// every transpose down to the leaves ((XY)^T = Y^T X^T, (X + Y)^T =
+// X^T + Y^T) and flattens nested sums into one list of signed terms, each
+// a single matrix or a product of two. A transposed leaf is read through
+// its CSC index, which is the CSR form of the transpose. That index is
+// built on first use and then cached on the leaf matrix, so it is the
+// space A^T takes: nnz entries kept alive with A, not a temporary, and
+// only the first evaluation pays for building it. All terms are then
+// accumulated row by row into one output, so A*B + C writes A*B straight
+// into the result instead of materializing it and merging. Only operands
+// of a product that are themselves compound (e.g. the A*B in (A*B)*C)
+// are evaluated into temporaries.
+public abstract class MatrixExpression {
+    final int rows, cols;
+    
+    MatrixExpression(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+    }
+    
+    public static MatrixExpression of(SparseMatrix matrix) {
+        return new Leaf(matrix, "M");
+    }
+    
+    // name is only used by explain()
+    public static MatrixExpression of(SparseMatrix matrix, String name) {
+        return new Leaf(matrix, name);
+    }
+    
+    public MatrixExpression transpose() {
+        return new Transpose(this);
+    }
+    
+    public MatrixExpression times(MatrixExpression other) {
+        if (cols != other.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + rows + "x" + cols + " by "
+                    + other.rows + "x" + other.cols);
+        }
+        return new Product(this, other);
+    }
+    
+    public MatrixExpression times(SparseMatrix other) {
+        return times(of(other));
+    }
+    
+    public MatrixExpression plus(MatrixExpression other) {
+        return new Sum(this, other, 1.0);
+    }
+    
+    public MatrixExpression plus(SparseMatrix other) {
+        return plus(of(other));
+    }
+    
+    public MatrixExpression minus(MatrixExpression other) {
+        return new Sum(this, other, -1.0);
+    }
+    
+    public MatrixExpression minus(SparseMatrix other) {
+        return minus(of(other));
+    }
+    
+    public SparseMatrix evaluate() {
+        return evaluate(null, OperationProgress.NONE);
+    }
+    
+    // Runs the fused kernel on pool, or serially when pool is null
+    public SparseMatrix evaluate(ForkJoinPool pool, OperationProgress progress) {
+        return evaluate(false, pool, progress);
+    }
+    
+    // The expression after transpose push-down, e.g. "A^T*B + C"
+    public String explain() {
+        List<Term> terms = new ArrayList<Term>();
+        describe(false, 1.0, terms);
+        return join(terms);
+    }
+    
+    private SparseMatrix evaluate(boolean transposed, ForkJoinPool pool, OperationProgress progress) {
+        List<Term> terms = new ArrayList<Term>();
+        lower(transposed, 1.0, terms, pool, progress);
+        int outRows = transposed ? cols : rows;
+        int outCols = transposed ? rows : cols;
+        
+        // A lone (possibly transposed) leaf shares its arrays with the input
+        if (terms.size() == 1 && terms.get(0).right == null && terms.get(0).coef == 1.0) {
+            Factor f = terms.get(0).left;
+            return new SparseMatrix(outRows, outCols, f.ptr, f.idx, f.vals);
+        }
+        return accumulate(outRows, outCols, terms.toArray(new Term[terms.size()]), pool, progress);
+    }
+    
+    // Appends the terms of coef * (this or its transpose) to out,
+    // evaluating compound product operands on the way.
+    abstract void lower(boolean transposed, double coef, List<Term> out, ForkJoinPool pool,
+            OperationProgress progress);
+    
+    // Same walk as lower() but only records labels, for explain()
+    abstract void describe(boolean transposed, double coef, List<Term> out);
+    
+    // Row access to an operand of a product: a leaf (or its transpose) is
+    // used in place, anything else is evaluated first.
+    Factor factor(boolean transposed, ForkJoinPool pool, OperationProgress progress) {
+        return Factor.of(evaluate(transposed, pool, progress), false);
+    }
+    
+    String label(boolean transposed) {
+        List<Term> terms = new ArrayList<Term>();
+        describe(transposed, 1.0, terms);
+        return "(" + join(terms) + ")";
+    }
+    
+    private static String join(List<Term> terms) {
+        StringBuilder text = new StringBuilder();
+        for (Term term : terms) {
+            if (text.length() > 0) text.append(term.coef < 0 ? " - " : " + ");
+            else if (term.coef < 0) text.append("-");
+            if (Math.abs(term.coef) != 1.0) text.append(Math.abs(term.coef)).append("*");
+            text.append(term.label);
+        }
+        return text.length() == 0 ? "0" : text.toString();
+    }
+    
+    static class Leaf extends MatrixExpression {
+        final SparseMatrix matrix;
+        final String name;
+        
+        Leaf(SparseMatrix matrix, String name) {
+            super(matrix.rows, matrix.cols);
+            this.matrix = matrix;
+            this.name = name;
+        }
+        
+        void lower(boolean transposed, double coef, List<Term> out, ForkJoinPool pool,
+                OperationProgress progress) {
+            out.add(new Term(coef, Factor.of(matrix, transposed), null, null));
+        }
+        
+        void describe(boolean transposed, double coef, List<Term> out) {
+            out.add(new Term(coef, null, null, label(transposed)));
+        }
+        
+        Factor factor(boolean transposed, ForkJoinPool pool, OperationProgress progress) {
+            return Factor.of(matrix, transposed);
+        }
+        
+        String label(boolean transposed) {
+            return transposed ? name + "^T" : name;
+        }
+    }
+    
+    static class Transpose extends MatrixExpression {
+        final MatrixExpression child;
+        
+        Transpose(MatrixExpression child) {
+            super(child.cols, child.rows);
+            this.child = child;
+        }
+        
+        void lower(boolean transposed, double coef, List<Term> out, ForkJoinPool pool,
+                OperationProgress progress) {
+            child.lower(!transposed, coef, out, pool, progress);
+        }
+        
+        void describe(boolean transposed, double coef, List<Term> out) {
+            child.describe(!transposed, coef, out);
+        }
+        
+        Factor factor(boolean transposed, ForkJoinPool pool, OperationProgress progress) {
+            return child.factor(!transposed, pool, progress);
+        }
+        
+        String label(boolean transposed) {
+            return child.label(!transposed);
+        }
+    }
+    
+    static class Product extends MatrixExpression {
+        final MatrixExpression left, right;
+        
+        Product(MatrixExpression left, MatrixExpression right) {
+            super(left.rows, right.cols);
+            this.left = left;
+            this.right = right;
+        }
+        
+        void lower(boolean transposed, double coef, List<Term> out, ForkJoinPool pool,
+                OperationProgress progress) {
+            Factor l = transposed ? right.factor(true, pool, progress) : left.factor(false, pool, progress);
+            Factor r = transposed ? left.factor(true, pool, progress) : right.factor(false, pool, progress);
+            out.add(new Term(coef, l, r, null));
+        }
+        
+        void describe(boolean transposed, double coef, List<Term> out) {
+            out.add(new Term(coef, null, null, label(transposed)));
+        }
+        
+        String label(boolean transposed) {
+            return transposed
+                    ? right.label(true) + "*" + left.label(true)
+                    : left.label(false) + "*" + right.label(false);
+        }
+    }
+    
+    static class Sum extends MatrixExpression {
+        final MatrixExpression left, right;
+        final double rightCoef;
+        
+        Sum(MatrixExpression left, MatrixExpression right, double rightCoef) {
+            super(left.rows, left.cols);
+            if (left.rows != right.rows || left.cols != right.cols) {
+                throw new IllegalArgumentException("Cannot add " + left.rows + "x" + left.cols + " and "
+                        + right.rows + "x" + right.cols);
+            }
+            this.left = left;
+            this.right = right;
+            this.rightCoef = rightCoef;
+        }
+        
+        void lower(boolean transposed, double coef, List<Term> out, ForkJoinPool pool,
+                OperationProgress progress) {
+            left.lower(transposed, coef, out, pool, progress);
+            right.lower(transposed, coef * rightCoef, out, pool, progress);
+        }
+        
+        void describe(boolean transposed, double coef, List<Term> out) {
+            left.describe(transposed, coef, out);
+            right.describe(transposed, coef * rightCoef, out);
+        }
+    }
+    
+    // CSR arrays of a leaf, or of its transpose via the leaf's CSC index
+    static class Factor {
+        final int[] ptr, idx;
+        final double[] vals;
+        
+        private Factor(int[] ptr, int[] idx, double[] vals) {
+            this.ptr = ptr;
+            this.idx = idx;
+            this.vals = vals;
+        }
+        
+        static Factor of(SparseMatrix matrix, boolean transposed) {
+            return transposed
+                    ? new Factor(matrix.colPtr(), matrix.rowIdx(), matrix.colValues())
+                    : new Factor(matrix.rowPtr, matrix.colIdx, matrix.values);
+        }
+    }
+    
+    // coef * left, or coef * left * right when right is set
+    static class Term {
+        final double coef;
+        final Factor left, right;
+        final String label;
+        
+        Term(double coef, Factor left, Factor right, String label) {
+            this.coef = coef;
+            this.left = left;
+            this.right = right;
+            this.label = label;
+        }
+    }
+    
+    // Fused row-wise accumulation of all terms: the same symbolic and
+    // numeric passes as the Gustavson SpGEMM, with every term scattered
+    // into one accumulator per output row.
+    private static SparseMatrix accumulate(int rows, int cols, final Term[] terms, ForkJoinPool pool,
+            final OperationProgress progress) {
+        progress.addWork(2L * rows);
+        
+        final int[] bounds = pool == null
+                ? new int[] { 0, rows }
+                : MatrixKernels.partitionRows(rowWork(rows, terms), pool.getParallelism());
+        final int chunks = bounds.length - 1;
+        final int width = cols;
+        final int[][] markers = new int[chunks][];
+        
+        // Symbolic pass
+        final int[] rowPtr = new int[rows + 1];
+        runChunks(pool, bounds, new MatrixKernels.ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                int[] marker = new int[width];
+                Arrays.fill(marker, -1);
+                for (int i = from; i < to; i++) {
+                    rowPtr[i + 1] = countRow(terms, i, marker);
+                    progress.rowsDone(1);
+                }
+                markers[chunk] = marker;
+            }
+        });
+        for (int i = 0; i < rows; i++) {
+            rowPtr[i + 1] += rowPtr[i];
+        }
+        
+        // Numeric pass
+        final int[] colIdx = new int[rowPtr[rows]];
+        final double[] values = new double[rowPtr[rows]];
+        runChunks(pool, bounds, new MatrixKernels.ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                int[] marker = markers[chunk];
+                Arrays.fill(marker, -1);
+                double[] accumulator = new double[width];
+                for (int i = from; i < to; i++) {
+                    computeRow(terms, i, marker, accumulator, colIdx, values, rowPtr[i]);
+                    progress.rowsDone(1);
+                }
+            }
+        });
+        
+        return MatrixKernels.dropZeros(rows, cols, rowPtr, colIdx, values);
+    }
+    
+    // Prefix sums of the entries each output row will visit
+    private static long[] rowWork(int rows, Term[] terms) {
+        long[] work = new long[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            long visits = 1;
+            for (Term term : terms) {
+                Factor l = term.left;
+                if (term.right == null) {
+                    visits += l.ptr[i + 1] - l.ptr[i];
+                } else {
+                    for (int p = l.ptr[i]; p < l.ptr[i + 1]; p++) {
+                        int k = l.idx[p];
+                        visits += term.right.ptr[k + 1] - term.right.ptr[k];
+                    }
+                }
+            }
+            work[i + 1] = work[i] + visits;
+        }
+        return work;
+    }
+    
+    private static void runChunks(ForkJoinPool pool, int[] bounds, MatrixKernels.ChunkBody body) {
+        if (pool == null) {
+            body.run(0, bounds[0], bounds[1]);
+        } else {
+            MatrixKernels.runChunks(pool, bounds, body);
+        }
+    }
+    
+    private static int countRow(Term[] terms, int i, int[] marker) {
+        int count = 0;
+        for (Term term : terms) {
+            Factor l = term.left;
+            Factor r = term.right;
+            if (r == null) {
+                for (int p = l.ptr[i]; p < l.ptr[i + 1]; p++) {
+                    int j = l.idx[p];
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        count++;
+                    }
+                }
+                continue;
+            }
+            for (int p = l.ptr[i]; p < l.ptr[i + 1]; p++) {
+                int k = l.idx[p];
+                for (int q = r.ptr[k]; q < r.ptr[k + 1]; q++) {
+                    int j = r.idx[q];
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+    
+    // Writes row i of the sum, sorted by column, into colIdx/values from offset.
+    private static void computeRow(Term[] terms, int i, int[] marker, double[] accumulator,
+            int[] colIdx, double[] values, int offset) {
+        int end = offset;
+        for (Term term : terms) {
+            Factor l = term.left;
+            Factor r = term.right;
+            double coef = term.coef;
+            if (r == null) {
+                for (int p = l.ptr[i]; p < l.ptr[i + 1]; p++) {
+                    int j = l.idx[p];
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        colIdx[end++] = j;
+                        accumulator[j] = coef * l.vals[p];
+                    } else {
+                        accumulator[j] += coef * l.vals[p];
+                    }
+                }
+                continue;
+            }
+            for (int p = l.ptr[i]; p < l.ptr[i + 1]; p++) {
+                int k = l.idx[p];
+                double valL = coef * l.vals[p];
+                for (int q = r.ptr[k]; q < r.ptr[k + 1]; q++) {
+                    int j = r.idx[q];
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        colIdx[end++] = j;
+                        accumulator[j] = valL * r.vals[q];
+                    } else {
+                        accumulator[j] += valL * r.vals[q];
+                    }
+                }
+            }
+        }
+        Arrays.sort(colIdx, offset, end);
+        for (int p = offset; p < end; p++) {
+            values[p] = accumulator[colIdx[p]];
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+public class MatrixGenerator {
+    
+    // Upper bound on the nonzeros of one generated matrix (array size limit)
+    public static final int MAX_NONZEROS = Integer.MAX_VALUE - 8;
+    
+    // Streaming sparse generator. Each row is a run of Bernoulli(density)
+    // trials; geometric skip sampling jumps from one success straight to the
+    // next, so the cost is O(nnz) instead of O(n^2) and no dense array is
+    // ever allocated. Rows are produced in fixed-size blocks, each with its
+    // own SplittableRandom split from the seed, so a seed yields the same
+    // matrix regardless of the thread count.
+    private static final int BLOCK_ROWS = 1024;
+    
+    public static SparseMatrix generateSparseMatrix(final int size, final double density, long seed,
+            ForkJoinPool pool, OperationProgress progress) {
+        if (density <= 0.0) {
+            return new SparseMatrix(size, size);
+        }
+        final double logFailure = Math.log1p(-density);
+        return generateRows(size, BLOCK_ROWS, size * density, seed, pool, progress, new RowSource() {
+            public void generate(SplittableRandom random, int from, int to, RowBuilder out) {
+                for (int i = from; i < to; i++) {
+                    long j = geometricSkip(random, logFailure, size);
+                    while (j < size) {
+                        out.add((int) j, random.nextInt(9) + 1); // Values 1-9
+                        j += 1 + geometricSkip(random, logFailure, size);
+                    }
+                    out.endRow(i);
+                }
+            }
+        });
+    }
+    
+    // Banded pattern: entries only within bandwidth of the diagonal,
+    // |i - j| <= bandwidth, each present with the given density. Sampled
+    // like generateSparseMatrix, restricted to the band of each row.
+    public static SparseMatrix generateBandedMatrix(final int size, final int bandwidth, double density,
+            long seed, ForkJoinPool pool, OperationProgress progress) {
+        if (density <= 0.0 || bandwidth < 0) {
+            return new SparseMatrix(size, size);
+        }
+        final double logFailure = Math.log1p(-density);
+        double expected = Math.min(size, 2.0 * bandwidth + 1) * density;
+        return generateRows(size, BLOCK_ROWS, expected, seed, pool, progress, new RowSource() {
+            public void generate(SplittableRandom random, int from, int to, RowBuilder out) {
+                for (int i = from; i < to; i++) {
+                    int first = Math.max(0, i - bandwidth);
+                    int width = (int) Math.min(size, (long) i + bandwidth + 1) - first;
+                    long j = geometricSkip(random, logFailure, width);
+                    while (j < width) {
+                        out.add(first + (int) j, random.nextInt(9) + 1);
+                        j += 1 + geometricSkip(random, logFailure, width);
+                    }
+                    out.endRow(i);
+                }
+            }
+        });
+    }
+    
+    // Block pattern: the matrix is tiled into blockSize x blockSize blocks
+    // and each block is either fully dense or empty, present with the given
+    // density, so the overall fill matches density. Chunks hold whole block
+    // rows so that every block is decided once.
+    public static SparseMatrix generateBlockMatrix(final int size, final int blockSize, double density,
+            long seed, ForkJoinPool pool, OperationProgress progress) {
+        if (density <= 0.0) {
+            return new SparseMatrix(size, size);
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        final double logFailure = Math.log1p(-density);
+        final int blockCols = (int) (((long) size + blockSize - 1) / blockSize);
+        int chunkRows = Math.max(1, BLOCK_ROWS / blockSize) * blockSize;
+        return generateRows(size, chunkRows, size * density, seed, pool, progress, new RowSource() {
+            public void generate(SplittableRandom random, int from, int to, RowBuilder out) {
+                int[] present = new int[16];
+                for (int row0 = from; row0 < to; row0 += blockSize) {
+                    int count = 0;
+                    long b = geometricSkip(random, logFailure, blockCols);
+                    while (b < blockCols) {
+                        if (count == present.length) present = Arrays.copyOf(present, 2 * count);
+                        present[count++] = (int) b;
+                        b += 1 + geometricSkip(random, logFailure, blockCols);
+                    }
+                    for (int i = row0, end = Math.min(to, row0 + blockSize); i < end; i++) {
+                        for (int k = 0; k < count; k++) {
+                            int col0 = present[k] * blockSize;
+                            for (int j = col0, jEnd = Math.min(size, col0 + blockSize); j < jEnd; j++) {
+                                out.add(j, random.nextInt(9) + 1);
+                            }
+                        }
+                        out.endRow(i);
+                    }
+                }
+            }
+        });
+    }
+    
+    // Rows from..to of a generated pattern, appended in order to out
+    private interface RowSource {
+        void generate(SplittableRandom random, int from, int to, RowBuilder out);
+    }
+    
+    // Growable column and value arrays for one chunk of rows
+    private static class RowBuilder {
+        private final int[] rowEnd;
+        private final OperationProgress progress;
+        int[] cols;
+        double[] values;
+        int size;
+        
+        RowBuilder(int[] rowEnd, OperationProgress progress, int capacity) {
+            this.rowEnd = rowEnd;
+            this.progress = progress;
+            cols = new int[capacity];
+            values = new double[capacity];
+        }
+        
+        void add(int col, double value) {
+            if (size == cols.length) {
+                if (size == MAX_NONZEROS) {
+                    throw new IllegalArgumentException("Generated matrix has too many non-zero elements");
+                }
+                int grown = (int) Math.min((long) cols.length * 2, MAX_NONZEROS);
+                cols = Arrays.copyOf(cols, grown);
+                values = Arrays.copyOf(values, grown);
+            }
+            cols[size] = col;
+            values[size] = value;
+            size++;
+        }
+        
+        void endRow(int i) {
+            rowEnd[i + 1] = size;
+            progress.rowsDone(1);
+        }
+    }
+    
+    // Runs source over chunks of chunkRows rows in parallel, each with its
+    // own random split from the seed, and stitches the chunks into CSR.
+    // perRow is the expected number of entries in a row, for presizing.
+    private static SparseMatrix generateRows(int size, int chunkRows, final double perRow, long seed,
+            ForkJoinPool pool, final OperationProgress progress, final RowSource source) {
+        progress.addWork(size);
+        int blocks = (size + chunkRows - 1) / chunkRows;
+        int[] bounds = new int[blocks + 1];
+        final SplittableRandom[] randoms = new SplittableRandom[blocks];
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int b = 0; b < blocks; b++) {
+            bounds[b + 1] = (int) Math.min(size, (long) (b + 1) * chunkRows);
+            randoms[b] = root.split();
+        }
+    
+        // Each block fills its own arrays and records per-row counts
+        final int[] rowEnd = new int[size + 1];
+        final int[][] blockCols = new int[blocks][];
+        final double[][] blockValues = new double[blocks][];
+        MatrixKernels.runChunks(pool, bounds, new MatrixKernels.ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                long expected = (long) Math.ceil((to - from) * perRow * 1.05) + 16;
+                RowBuilder out = new RowBuilder(rowEnd, progress, (int) Math.min(expected, MAX_NONZEROS));
+                source.generate(randoms[chunk], from, to, out);
+                blockCols[chunk] = out.cols;
+                blockValues[chunk] = out.values;
+            }
+        });
+    
+        // Stitch the blocks together into one CSR matrix
+        final int[] rowPtr = new int[size + 1];
+        long total = 0;
+        for (int b = 0; b < blocks; b++) {
+            for (int i = bounds[b]; i < bounds[b + 1]; i++) {
+                int count = rowEnd[i + 1] - (i == bounds[b] ? 0 : rowEnd[i]);
+                total += count;
+                if (total > MAX_NONZEROS) {
+                    throw new IllegalArgumentException("Generated matrix has too many non-zero elements");
+                }
+                rowPtr[i + 1] = (int) total;
+            }
+        }
+        final int[] colIdx = new int[(int) total];
+        final double[] values = new double[(int) total];
+        MatrixKernels.runChunks(pool, bounds, new MatrixKernels.ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                int start = rowPtr[from];
+                int length = rowPtr[to] - start;
+                System.arraycopy(blockCols[chunk], 0, colIdx, start, length);
+                System.arraycopy(blockValues[chunk], 0, values, start, length);
+            }
+        });
+        return new SparseMatrix(size, size, rowPtr, colIdx, values);
+    }
+    
+    // Symmetric positive-definite test matrix for the iterative solvers:
+    // S = R + R^T for a random R of the given density, with the diagonal set
+    // to each row's absolute sum plus one. The result is symmetric and
+    // strictly diagonally dominant with a positive diagonal, hence SPD.
+    public static SparseMatrix generateSpdMatrix(int size, double density, long seed, ForkJoinPool pool,
+            OperationProgress progress) {
+        SparseMatrix r = generateSparseMatrix(size, density, seed, pool, progress);
+        SparseMatrix s = r.lazy().plus(r.lazy().transpose()).evaluate(pool, progress);
+    
+        int[] rowPtr = new int[size + 1];
+        int[] colIdx = new int[size];
+        double[] diagonal = new double[size];
+        for (int i = 0; i < size; i++) {
+            double sum = 1.0;
+            for (int p = s.rowPtr[i]; p < s.rowPtr[i + 1]; p++) {
+                int j = s.colIdx[p];
+                double v = s.values[p];
+                sum += j == i ? Math.abs(v) - v : Math.abs(v); // S already holds v on the diagonal
+            }
+            rowPtr[i + 1] = i + 1;
+            colIdx[i] = i;
+            diagonal[i] = sum;
+        }
+        return MatrixKernels.performSparseAddition(s, new SparseMatrix(size, size, rowPtr, colIdx, diagonal),
+                progress);
+    }
+    
+    // Number of failures before the next success, capped at limit
+    private static long geometricSkip(SplittableRandom random, double logFailure, int limit) {
+        double skip = Math.log(1.0 - random.nextDouble()) / logFailure;
+        return skip < limit ? (long) skip : limit;
+    }
+}
@@ -0,0 +1,591 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Matrix kernels shared by the Swing front end and the command-line
+// benchmark. Nothing here depends on AWT or Swing.
+public class MatrixKernels {
+    
+    public static final DenseKernels SCALAR_KERNELS = new ScalarKernels();
+    
+    // Null when the Vector API kernels cannot be loaded
+    public static final DenseKernels SIMD_KERNELS = loadVectorKernels();
+    
+    private static DenseKernels loadVectorKernels() {
+        try {
+            return (DenseKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+    
+    // Matrix operation implementations
+    // Dense kernels work on flat row-major storage and split the output rows
+    // evenly across the kernel pool.
+    private static final int TILE_K = 128;   // rows of B kept hot per pass
+    private static final int TILE_J = 512;   // columns of B/C per pass (B tile fits L2)
+    private static final int TILE_T = 32;    // square transpose tile (fits L1)
+    
+    public static DenseMatrix performAddition(final DenseMatrix a, final DenseMatrix b, ForkJoinPool pool,
+            final DenseKernels kernels, final OperationProgress progress) {
+        final DenseMatrix result = new DenseMatrix(a.rows, a.cols);
+        final int cols = a.cols;
+        progress.addWork(a.rows);
+        runChunks(pool, uniformBounds(a.rows, pool.getParallelism()), new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    kernels.add(a.data, b.data, result.data, i * cols, (i + 1) * cols);
+                    progress.rowsDone(1);
+                }
+            }
+        });
+        return result;
+    }
+    
+    public static DenseMatrix performSubtraction(final DenseMatrix a, final DenseMatrix b, ForkJoinPool pool,
+            final DenseKernels kernels, final OperationProgress progress) {
+        final DenseMatrix result = new DenseMatrix(a.rows, a.cols);
+        final int cols = a.cols;
+        progress.addWork(a.rows);
+        runChunks(pool, uniformBounds(a.rows, pool.getParallelism()), new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    kernels.subtract(a.data, b.data, result.data, i * cols, (i + 1) * cols);
+                    progress.rowsDone(1);
+                }
+            }
+        });
+        return result;
+    }
+    
+    // Tiled i-k-j multiply: the innermost loop streams a row of B and a row
+    // of C with unit stride, and the K x J tile of B is reused by every row
+    // of the chunk before moving on.
+    public static DenseMatrix performTraditionalMultiplication(final DenseMatrix a, final DenseMatrix b,
+            ForkJoinPool pool, final DenseKernels kernels, final OperationProgress progress) {
+        final DenseMatrix result = new DenseMatrix(a.rows, b.cols);
+        final int n = a.cols;
+        final int m = b.cols;
+        // Every row is revisited once per K x J tile
+        long tiles = (long) ((n + TILE_K - 1) / TILE_K) * ((m + TILE_J - 1) / TILE_J);
+        progress.addWork(a.rows * tiles);
+        runChunks(pool, uniformBounds(a.rows, pool.getParallelism()), new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                double[] x = a.data, y = b.data, z = result.data;
+                for (int kk = 0; kk < n; kk += TILE_K) {
+                    int kEnd = Math.min(kk + TILE_K, n);
+                    for (int jj = 0; jj < m; jj += TILE_J) {
+                        int jEnd = Math.min(jj + TILE_J, m);
+                        for (int i = from; i < to; i++) {
+                            int rowA = i * n;
+                            int rowC = i * m;
+                            for (int k = kk; k < kEnd; k++) {
+                                kernels.axpy(x[rowA + k], y, k * m + jj, z, rowC + jj, jEnd - jj);
+                            }
+                        }
+                        progress.rowsDone(to - from);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+    
+    // Blocked transpose: each chunk owns a range of output rows and copies
+    // square tiles so both the reads and the writes stay within cache.
+    public static DenseMatrix performTraditionalTranspose(final DenseMatrix matrix, ForkJoinPool pool,
+            final OperationProgress progress) {
+        final DenseMatrix result = new DenseMatrix(matrix.cols, matrix.rows);
+        final int rows = matrix.rows;
+        final int cols = matrix.cols;
+        progress.addWork(cols);
+        runChunks(pool, uniformBounds(cols, pool.getParallelism()), new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                double[] x = matrix.data, z = result.data;
+                for (int jj = from; jj < to; jj += TILE_T) {
+                    int jEnd = Math.min(jj + TILE_T, to);
+                    for (int ii = 0; ii < rows; ii += TILE_T) {
+                        int iEnd = Math.min(ii + TILE_T, rows);
+                        for (int j = jj; j < jEnd; j++) {
+                            int rowZ = j * rows;
+                            for (int i = ii; i < iEnd; i++) {
+                                z[rowZ + i] = x[i * cols + j];
+                            }
+                        }
+                    }
+                    progress.rowsDone(jEnd - jj);
+                }
+            }
+        });
+        return result;
+    }
+    
+    // Sparse addition and subtraction merge the sorted column lists of each
+    // pair of rows in O(nnzA + nnzB). Entries that cancel to exact zero are
+    // not emitted.
+    public static SparseMatrix performSparseAddition(SparseMatrix a, SparseMatrix b, OperationProgress progress) {
+        return mergeSparse(a, b, false, progress);
+    }
+    
+    public static SparseMatrix performSparseSubtraction(SparseMatrix a, SparseMatrix b, OperationProgress progress) {
+        return mergeSparse(a, b, true, progress);
+    }
+    
+    private static SparseMatrix mergeSparse(SparseMatrix a, SparseMatrix b, boolean subtract,
+            OperationProgress progress) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("Matrices must have the same dimensions");
+        }
+        long total = (long) a.getNonZeroCount() + b.getNonZeroCount();
+        if (total > MatrixGenerator.MAX_NONZEROS) {
+            throw new IllegalArgumentException("Sum has too many non-zero elements");
+        }
+        progress.addWork(a.rows);
+        int capacity = (int) total;
+        int[] rowPtr = new int[a.rows + 1];
+        int[] colIdx = new int[capacity];
+        double[] values = new double[capacity];
+        int k = 0;
+        for (int i = 0; i < a.rows; i++) {
+            int p = a.rowPtr[i], pEnd = a.rowPtr[i + 1];
+            int q = b.rowPtr[i], qEnd = b.rowPtr[i + 1];
+            while (p < pEnd || q < qEnd) {
+                int colA = p < pEnd ? a.colIdx[p] : Integer.MAX_VALUE;
+                int colB = q < qEnd ? b.colIdx[q] : Integer.MAX_VALUE;
+                int col;
+                double value;
+                if (colA == colB) {
+                    col = colA;
+                    value = subtract ? a.values[p++] - b.values[q++] : a.values[p++] + b.values[q++];
+                } else if (colA < colB) {
+                    col = colA;
+                    value = a.values[p++];
+                } else {
+                    col = colB;
+                    value = subtract ? -b.values[q++] : b.values[q++];
+                }
+                if (value != 0.0) {
+                    colIdx[k] = col;
+                    values[k] = value;
+                    k++;
+                }
+            }
+            rowPtr[i + 1] = k;
+            progress.rowsDone(1);
+        }
+        if (k < capacity) {
+            colIdx = Arrays.copyOf(colIdx, k);
+            values = Arrays.copyOf(values, k);
+        }
+        return new SparseMatrix(a.rows, a.cols, rowPtr, colIdx, values);
+    }
+    
+    // Gustavson row-wise SpGEMM. A symbolic pass sizes every output row
+    // first, then a numeric pass accumulates each row of A*B into a dense
+    // accumulator indexed by column, touching only the rows of B selected
+    // by the nonzeros of A.
+    public static SparseMatrix performSparseMultiplication(SparseMatrix a, SparseMatrix b, OperationProgress progress) {
+        progress.addWork(2L * a.rows);
+        int[] marker = new int[b.cols];
+        Arrays.fill(marker, -1);
+        
+        // Symbolic pass
+        int[] rowPtr = new int[a.rows + 1];
+        for (int i = 0; i < a.rows; i++) {
+            rowPtr[i + 1] = rowPtr[i] + countProductRow(a, b, i, marker);
+            progress.rowsDone(1);
+        }
+        
+        // Numeric pass
+        int[] colIdx = new int[rowPtr[a.rows]];
+        double[] values = new double[rowPtr[a.rows]];
+        double[] accumulator = new double[b.cols];
+        Arrays.fill(marker, -1);
+        for (int i = 0; i < a.rows; i++) {
+            computeProductRow(a, b, i, marker, accumulator, colIdx, values, rowPtr[i]);
+            progress.rowsDone(1);
+        }
+        
+        return dropZeros(a.rows, b.cols, rowPtr, colIdx, values);
+    }
+    
+    // Number of distinct columns in row i of A*B. marker[j] == i means
+    // column j has already been counted for this row.
+    private static int countProductRow(SparseMatrix a, SparseMatrix b, int i, int[] marker) {
+        int count = 0;
+        for (int p = a.rowPtr[i]; p < a.rowPtr[i + 1]; p++) {
+            int k = a.colIdx[p];
+            for (int q = b.rowPtr[k]; q < b.rowPtr[k + 1]; q++) {
+                int j = b.colIdx[q];
+                if (marker[j] != i) {
+                    marker[j] = i;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    // Writes row i of A*B, sorted by column, into colIdx/values from offset.
+    private static void computeProductRow(SparseMatrix a, SparseMatrix b, int i, int[] marker,
+            double[] accumulator, int[] colIdx, double[] values, int offset) {
+        int end = offset;
+        for (int p = a.rowPtr[i]; p < a.rowPtr[i + 1]; p++) {
+            int k = a.colIdx[p];
+            double valA = a.values[p];
+            for (int q = b.rowPtr[k]; q < b.rowPtr[k + 1]; q++) {
+                int j = b.colIdx[q];
+                if (marker[j] != i) {
+                    marker[j] = i;
+                    colIdx[end++] = j;
+                    accumulator[j] = valA * b.values[q];
+                } else {
+                    accumulator[j] += valA * b.values[q];
+                }
+            }
+        }
+        Arrays.sort(colIdx, offset, end);
+        for (int p = offset; p < end; p++) {
+            values[p] = accumulator[colIdx[p]];
+        }
+    }
+    
+    // Removes entries that cancelled to exact zero, compacting in place.
+    static SparseMatrix dropZeros(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+        int w = 0;
+        int rowBegin = 0;
+        for (int i = 0; i < rows; i++) {
+            int rowEnd = rowPtr[i + 1];
+            for (int p = rowBegin; p < rowEnd; p++) {
+                if (values[p] != 0.0) {
+                    colIdx[w] = colIdx[p];
+                    values[w] = values[p];
+                    w++;
+                }
+            }
+            rowBegin = rowEnd;
+            rowPtr[i + 1] = w;
+        }
+        if (w < colIdx.length) {
+            colIdx = Arrays.copyOf(colIdx, w);
+            values = Arrays.copyOf(values, w);
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+    }
+    
+    // Counting-sort transpose in O(rows + cols + nnz) with row-sorted output
+    public static SparseMatrix performSparseTranspose(SparseMatrix matrix, OperationProgress progress) {
+        int nnz = matrix.getNonZeroCount();
+        int[] rowPtr = new int[matrix.cols + 1];
+        int[] colIdx = new int[nnz];
+        double[] values = new double[nnz];
+        progress.addWork(matrix.rows);
+        SparseMatrix.transposeInto(matrix, rowPtr, colIdx, values, progress);
+        return new SparseMatrix(matrix.cols, matrix.rows, rowPtr, colIdx, values);
+    }
+    
+    // Same transpose written into a caller-owned workspace, so repeated
+    // transposes allocate nothing once its arrays are large enough. The
+    // workspace is never wrapped as a SparseMatrix: the next transpose
+    // overwrites it, which would silently change a matrix that callers
+    // and ResultCache assume immutable.
+    public static void performSparseTranspose(SparseMatrix matrix, TransposeWorkspace workspace,
+            OperationProgress progress) {
+        workspace.reset(matrix.cols, matrix.rows, matrix.getNonZeroCount());
+        progress.addWork(matrix.rows);
+        SparseMatrix.transposeInto(matrix, workspace.rowPtr, workspace.colIdx, workspace.values, progress);
+    }
+    
+    // Reusable output of performSparseTranspose. After a transpose it holds
+    // the rows x cols result in rowPtr[0 .. rows] and colIdx/values[0 ..
+    // rowPtr[rows]), valid until the next transpose into it; the arrays
+    // only grow.
+    public static class TransposeWorkspace {
+        int rows, cols;
+        int[] rowPtr = new int[1];
+        int[] colIdx = new int[0];
+        double[] values = new double[0];
+        
+        void reset(int r, int c, int nnz) {
+            rows = r;
+            cols = c;
+            if (rowPtr.length < r + 1) rowPtr = new int[r + 1];
+            if (colIdx.length < nnz) {
+                colIdx = new int[nnz];
+                values = new double[nnz];
+            }
+        }
+        
+        public int getRows() {
+            return rows;
+        }
+        
+        public int getCols() {
+            return cols;
+        }
+        
+        public int getNonZeroCount() {
+            return rowPtr[rows];
+        }
+        
+        // Copy of the current contents that later transposes leave alone
+        public SparseMatrix toSparseMatrix() {
+            int nnz = getNonZeroCount();
+            return new SparseMatrix(rows, cols, Arrays.copyOf(rowPtr, rows + 1),
+                    Arrays.copyOf(colIdx, nnz), Arrays.copyOf(values, nnz));
+        }
+    }
+    
+    // Sparse matrix-vector products into a caller-owned y, so iterative
+    // solvers can reuse their vectors. x and y must not alias.
+    public static void performSparseMatrixVector(SparseMatrix a, double[] x, double[] y) {
+        multiplyRows(a.rowPtr, a.colIdx, a.values, x, y, 0, a.rows);
+    }
+    
+    // y = A^T x by scattering the rows of A; needs no column index
+    public static void performSparseTransposeMatrixVector(SparseMatrix a, double[] x, double[] y) {
+        Arrays.fill(y, 0, a.cols, 0.0);
+        for (int i = 0; i < a.rows; i++) {
+            double xi = x[i];
+            if (xi == 0.0) continue;
+            for (int p = a.rowPtr[i]; p < a.rowPtr[i + 1]; p++) {
+                y[a.colIdx[p]] += a.values[p] * xi;
+            }
+        }
+    }
+    
+    private static void multiplyRows(int[] ptr, int[] idx, double[] vals, double[] x, double[] y,
+            int from, int to) {
+        for (int i = from; i < to; i++) {
+            double sum = 0.0;
+            for (int p = ptr[i]; p < ptr[i + 1]; p++) {
+                sum += vals[p] * x[idx[p]];
+            }
+            y[i] = sum;
+        }
+    }
+    
+    // Parallel sparse kernels. Rows are split into one contiguous chunk per
+    // worker, balanced by the work each row carries rather than by row count,
+    // and every chunk owns its scratch arrays. Chunks write disjoint ranges of
+    // the output, so no locking is needed and results match the serial
+    // kernels exactly.
+    public static SparseMatrix performParallelSparseMultiplication(final SparseMatrix a, final SparseMatrix b,
+            ForkJoinPool pool, final OperationProgress progress) {
+        progress.addWork(2L * a.rows);
+        // Work per row of A is the number of B entries it will visit
+        long[] work = new long[a.rows + 1];
+        for (int i = 0; i < a.rows; i++) {
+            long flops = 1;
+            for (int p = a.rowPtr[i]; p < a.rowPtr[i + 1]; p++) {
+                int k = a.colIdx[p];
+                flops += b.rowPtr[k + 1] - b.rowPtr[k];
+            }
+            work[i + 1] = work[i] + flops;
+        }
+        final int[] bounds = partitionRows(work, pool.getParallelism());
+        final int chunks = bounds.length - 1;
+        final int[][] markers = new int[chunks][];
+        
+        // Symbolic pass: each chunk fills rowPtr[i + 1] with its row counts
+        final int[] rowPtr = new int[a.rows + 1];
+        runChunks(pool, bounds, new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                int[] marker = new int[b.cols];
+                Arrays.fill(marker, -1);
+                for (int i = from; i < to; i++) {
+                    rowPtr[i + 1] = countProductRow(a, b, i, marker);
+                    progress.rowsDone(1);
+                }
+                markers[chunk] = marker;
+            }
+        });
+        for (int i = 0; i < a.rows; i++) {
+            rowPtr[i + 1] += rowPtr[i];
+        }
+        
+        // Numeric pass into the disjoint ranges fixed above
+        final int[] colIdx = new int[rowPtr[a.rows]];
+        final double[] values = new double[rowPtr[a.rows]];
+        runChunks(pool, bounds, new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                int[] marker = markers[chunk];
+                Arrays.fill(marker, -1);
+                double[] accumulator = new double[b.cols];
+                for (int i = from; i < to; i++) {
+                    computeProductRow(a, b, i, marker, accumulator, colIdx, values, rowPtr[i]);
+                    progress.rowsDone(1);
+                }
+            }
+        });
+        
+        return dropZeros(a.rows, b.cols, rowPtr, colIdx, values);
+    }
+    
+    public static SparseMatrix performParallelSparseTranspose(final SparseMatrix matrix, ForkJoinPool pool,
+            final OperationProgress progress) {
+        final int rows = matrix.rows;
+        final int cols = matrix.cols;
+        progress.addWork(rows);
+        long[] work = new long[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            work[i + 1] = work[i] + 1 + matrix.rowPtr[i + 1] - matrix.rowPtr[i];
+        }
+        final int[] bounds = partitionRows(work, pool.getParallelism());
+        final int chunks = bounds.length - 1;
+        
+        // Per-chunk column histograms
+        final int[][] offsets = new int[chunks][];
+        runChunks(pool, bounds, new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                int[] count = new int[cols];
+                for (int p = matrix.rowPtr[from]; p < matrix.rowPtr[to]; p++) {
+                    count[matrix.colIdx[p]]++;
+                }
+                offsets[chunk] = count;
+            }
+        });
+        
+        // Column-major prefix sum turns the counts into each chunk's
+        // starting slot within every output row
+        int[] rowPtr = new int[cols + 1];
+        int running = 0;
+        for (int j = 0; j < cols; j++) {
+            rowPtr[j] = running;
+            for (int c = 0; c < chunks; c++) {
+                int count = offsets[c][j];
+                offsets[c][j] = running;
+                running += count;
+            }
+        }
+        rowPtr[cols] = running;
+        
+        final int[] colIdx = new int[running];
+        final double[] values = new double[running];
+        runChunks(pool, bounds, new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                int[] next = offsets[chunk];
+                for (int i = from; i < to; i++) {
+                    for (int p = matrix.rowPtr[i]; p < matrix.rowPtr[i + 1]; p++) {
+                        int q = next[matrix.colIdx[p]]++;
+                        colIdx[q] = i;
+                        values[q] = matrix.values[p];
+                    }
+                    progress.rowsDone(1);
+                }
+            }
+        });
+        
+        return new SparseMatrix(cols, rows, rowPtr, colIdx, values);
+    }
+    
+    public static void performParallelSparseMatrixVector(SparseMatrix a, double[] x, double[] y,
+            ForkJoinPool pool) {
+        performParallelSparseMatrixVector(a, x, y, pool, matrixVectorBounds(a.rowPtr, pool.getParallelism()));
+    }
+    
+    // Same product with chunk bounds from matrixVectorBounds, for callers
+    // that multiply by the same matrix repeatedly
+    static void performParallelSparseMatrixVector(final SparseMatrix a, final double[] x, final double[] y,
+            ForkJoinPool pool, int[] bounds) {
+        runChunks(pool, bounds, new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                multiplyRows(a.rowPtr, a.colIdx, a.values, x, y, from, to);
+            }
+        });
+    }
+    
+    // y = A^T x as a row-parallel gather over the CSC index of A
+    public static void performParallelSparseTransposeMatrixVector(SparseMatrix a, final double[] x,
+            final double[] y, ForkJoinPool pool) {
+        final int[] colPtr = a.colPtr();
+        final int[] rowIdx = a.rowIdx();
+        final double[] colValues = a.colValues();
+        runChunks(pool, matrixVectorBounds(colPtr, pool.getParallelism()), new ChunkBody() {
+            public void run(int chunk, int from, int to) {
+                multiplyRows(colPtr, rowIdx, colValues, x, y, from, to);
+            }
+        });
+    }
+    
+    // Balances rows by their nonzeros plus one for the row itself
+    static int[] matrixVectorBounds(int[] ptr, int parts) {
+        int rows = ptr.length - 1;
+        long[] work = new long[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            work[i + 1] = (long) ptr[i + 1] + i + 1;
+        }
+        return partitionRows(work, parts);
+    }
+    
+    interface ChunkBody {
+        void run(int chunk, int from, int to);
+    }
+    
+    // Runs body once per chunk [bounds[c], bounds[c + 1]) on the pool and
+    // waits for all of them.
+    static void runChunks(ForkJoinPool pool, final int[] bounds, final ChunkBody body) {
+        final int chunks = bounds.length - 1;
+        pool.invoke(new RecursiveAction() {
+            protected void compute() {
+                List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(chunks);
+                for (int c = 0; c < chunks; c++) {
+                    final int chunk = c;
+                    tasks.add(new RecursiveAction() {
+                        protected void compute() {
+                            body.run(chunk, bounds[chunk], bounds[chunk + 1]);
+                        }
+                    });
+                }
+                // Every chunk is joined before a failure is rethrown.
+                // invokeAll would cancel the rest on the first exception and
+                // return while they still run, but a cancelled kernel must
+                // leave the pool idle when it returns.
+                for (RecursiveAction task : tasks) {
+                    task.fork();
+                }
+                for (RecursiveAction task : tasks) {
+                    task.quietlyJoin();
+                }
+                for (RecursiveAction task : tasks) {
+                    task.join();
+                }
+            }
+        });
+    }
+    
+    // Splits rows [0, n) into `parts` ranges of equal row count.
+    static int[] uniformBounds(int rows, int parts) {
+        parts = Math.max(1, Math.min(parts, rows));
+        int[] bounds = new int[parts + 1];
+        for (int c = 1; c <= parts; c++) {
+            bounds[c] = (int) ((long) rows * c / parts);
+        }
+        return bounds;
+    }
+    
+    // Splits rows [0, n) into at most `parts` contiguous ranges of about equal
+    // work, where prefix[i] is the total work of the rows before i.
+    static int[] partitionRows(long[] prefix, int parts) {
+        int rows = prefix.length - 1;
+        parts = Math.max(1, Math.min(parts, rows));
+        int[] bounds = new int[parts + 1];
+        long total = prefix[rows];
+        for (int c = 1; c < parts; c++) {
+            long target = total * c / parts;
+            int lo = bounds[c - 1], hi = rows;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prefix[mid] < target) lo = mid + 1;
+                else hi = mid;
+            }
+            bounds[c] = lo;
+        }
+        bounds[parts] = rows;
+        return bounds;
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Matrix Market coordinate files (.mtx). The reader tokenizes the byte
+// stream directly, with no per-line strings, and writes every column and
+// value straight into the CSR arrays, sized from the header. An in-place
+// counting sort by row then produces CSR, and each row is sorted by
+// column, with duplicates summed and explicit zeros dropped.
+//
+// This is not constant extra memory: the input is read once, so the row
+// of every entry has to be kept (one int each) until the sort. Beyond the
+// result there is that row array, a row cursor array and a fixed read
+// buffer. Symmetric and skew-symmetric files are sized as if every entry
+// were mirrored, and the arrays are trimmed by one copy when diagonals,
+// duplicates or zeros leave them longer than needed.
+//
+// Supported: coordinate real, integer and pattern matrices with general,
+// symmetric or skew-symmetric storage. Pattern entries read as 1.0.
+public class MatrixMarketIO {
+    
+    private static final int BUFFER_BYTES = 1 << 16;
+    
+    public static SparseMatrix read(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+    
+    public static SparseMatrix read(InputStream in) throws IOException {
+        Tokenizer tokens = new Tokenizer(in);
+        
+        // %%MatrixMarket matrix coordinate <field> <symmetry>
+        String banner = tokens.line();
+        String[] words = banner == null ? new String[0] : banner.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        if (words.length != 5 || !words[0].equals("%%matrixmarket") || !words[1].equals("matrix")) {
+            throw new IOException("Missing %%MatrixMarket header");
+        }
+        if (!words[2].equals("coordinate")) {
+            throw new IOException("Unsupported Matrix Market format: " + words[2]);
+        }
+        String field = words[3];
+        String symmetry = words[4];
+        boolean pattern = field.equals("pattern");
+        if (!pattern && !field.equals("real") && !field.equals("integer")) {
+            throw new IOException("Unsupported Matrix Market field: " + field);
+        }
+        boolean symmetric = symmetry.equals("symmetric");
+        boolean skew = symmetry.equals("skew-symmetric");
+        if (!symmetric && !skew && !symmetry.equals("general")) {
+            throw new IOException("Unsupported Matrix Market symmetry: " + symmetry);
+        }
+        
+        tokens.skipComments();
+        long rowsRead = tokens.nextLong();
+        long colsRead = tokens.nextLong();
+        long entries = tokens.nextLong();
+        long capacity = symmetric || skew ? 2 * entries : entries;
+        if (rowsRead < 0 || colsRead < 0 || entries < 0 || rowsRead > Integer.MAX_VALUE
+                || colsRead > Integer.MAX_VALUE || capacity > MatrixGenerator.MAX_NONZEROS) {
+            throw new IOException("Invalid size line: " + rowsRead + " " + colsRead + " " + entries);
+        }
+        int rows = (int) rowsRead;
+        int cols = (int) colsRead;
+        
+        // Single pass over the entries: columns and values go straight into
+        // the result arrays, with only the row of each entry kept aside and
+        // counted per row as it is read
+        int[] entryRows = new int[(int) capacity];
+        int[] colIdx = new int[(int) capacity];
+        double[] values = new double[(int) capacity];
+        int[] rowPtr = new int[rows + 1];
+        int n = 0;
+        for (long e = 0; e < entries; e++) {
+            long i = tokens.nextLong() - 1;
+            long j = tokens.nextLong() - 1;
+            double value = pattern ? 1.0 : tokens.nextDouble();
+            if (i < 0 || i >= rows || j < 0 || j >= cols) {
+                throw new IOException("Entry " + (e + 1) + " out of range: " + (i + 1) + " " + (j + 1));
+            }
+            entryRows[n] = (int) i;
+            colIdx[n] = (int) j;
+            values[n] = value;
+            rowPtr[(int) i + 1]++;
+            n++;
+            if ((symmetric || skew) && i != j) {
+                entryRows[n] = (int) j;
+                colIdx[n] = (int) i;
+                values[n] = skew ? -value : value;
+                rowPtr[(int) j + 1]++;
+                n++;
+            }
+        }
+        for (int i = 0; i < rows; i++) {
+            rowPtr[i + 1] += rowPtr[i];
+        }
+        
+        // In-place counting sort by row: every swap moves one entry into
+        // the next free slot of its row, so each entry moves at most once
+        int[] next = Arrays.copyOf(rowPtr, rows);
+        for (int i = 0; i < rows; i++) {
+            while (next[i] < rowPtr[i + 1]) {
+                int p = next[i];
+                int r = entryRows[p];
+                if (r == i) {
+                    next[i]++;
+                    continue;
+                }
+                int q = next[r]++;
+                entryRows[p] = entryRows[q];
+                entryRows[q] = r;
+                int j = colIdx[p];
+                colIdx[p] = colIdx[q];
+                colIdx[q] = j;
+                double v = values[p];
+                values[p] = values[q];
+                values[q] = v;
+            }
+        }
+        entryRows = null;
+        next = null;
+        
+        // Sort each row by column, then sum duplicates and drop zeros in place
+        int w = 0;
+        int rowBegin = 0;
+        for (int i = 0; i < rows; i++) {
+            int rowEnd = rowPtr[i + 1];
+            sortRow(colIdx, values, rowBegin, rowEnd);
+            for (int p = rowBegin; p < rowEnd; ) {
+                int j = colIdx[p];
+                double sum = values[p++];
+                while (p < rowEnd && colIdx[p] == j) {
+                    sum += values[p++];
+                }
+                if (sum != 0.0) {
+                    colIdx[w] = j;
+                    values[w] = sum;
+                    w++;
+                }
+            }
+            rowBegin = rowEnd;
+            rowPtr[i + 1] = w;
+        }
+        if (w < colIdx.length) {
+            colIdx = Arrays.copyOf(colIdx, w);
+            values = Arrays.copyOf(values, w);
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+    }
+    
+    // Writes a general real coordinate file. Integral values are written
+    // without a fraction, everything else in shortest round-trip form.
+    public static void write(SparseMatrix matrix, Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
+        try {
+            write(matrix, out);
+        } finally {
+            out.close();
+        }
+    }
+    
+    public static void write(SparseMatrix matrix, OutputStream out) throws IOException {
+        // Text is staged in a builder and written in blocks of about BUFFER_BYTES
+        StringBuilder text = new StringBuilder(BUFFER_BYTES + 64);
+        text.append("%%MatrixMarket matrix coordinate real general\n");
+        text.append(matrix.rows).append(' ').append(matrix.cols).append(' ')
+                .append(matrix.getNonZeroCount()).append('\n');
+        for (int i = 0; i < matrix.rows; i++) {
+            for (int p = matrix.rowPtr[i]; p < matrix.rowPtr[i + 1]; p++) {
+                double value = matrix.values[p];
+                text.append(i + 1).append(' ').append(matrix.colIdx[p] + 1).append(' ');
+                if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                    text.append((long) value);
+                } else {
+                    text.append(value);
+                }
+                text.append('\n');
+                if (text.length() >= BUFFER_BYTES) {
+                    out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+                    text.setLength(0);
+                }
+            }
+        }
+        out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+    
+    // Insertion sort for short rows, otherwise sort an index permutation
+    // through packed (column, position) keys
+    private static void sortRow(int[] colIdx, double[] values, int from, int to) {
+        if (to - from <= 32) {
+            for (int p = from + 1; p < to; p++) {
+                int j = colIdx[p];
+                double v = values[p];
+                int q = p - 1;
+                while (q >= from && colIdx[q] > j) {
+                    colIdx[q + 1] = colIdx[q];
+                    values[q + 1] = values[q];
+                    q--;
+                }
+                colIdx[q + 1] = j;
+                values[q + 1] = v;
+            }
+            return;
+        }
+        boolean sorted = true;
+        for (int p = from + 1; p < to && sorted; p++) {
+            sorted = colIdx[p - 1] <= colIdx[p];
+        }
+        if (sorted) return;
+        long[] keys = new long[to - from];
+        for (int p = from; p < to; p++) {
+            keys[p - from] = ((long) colIdx[p] << 32) | (p - from);
+        }
+        Arrays.sort(keys);
+        double[] copy = Arrays.copyOfRange(values, from, to);
+        for (int k = 0; k < keys.length; k++) {
+            colIdx[from + k] = (int) (keys[k] >>> 32);
+            values[from + k] = copy[(int) keys[k]];
+        }
+    }
+    
+    // Whitespace tokenizer over a byte stream. Tokens are copied into a
+    // reused byte array; integers and short decimals are converted in
+    // place, anything else goes through Double.parseDouble.
+    private static class Tokenizer {
+        // Exact powers of ten: m / 10^k is correctly rounded for m < 2^53
+        private static final double[] POWERS_OF_TEN = new double[23];
+        static {
+            POWERS_OF_TEN[0] = 1.0;
+            for (int k = 1; k < POWERS_OF_TEN.length; k++) {
+                POWERS_OF_TEN[k] = POWERS_OF_TEN[k - 1] * 10.0;
+            }
+        }
+        
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private byte[] token = new byte[64];
+        private int length;
+        private int position, limit;
+        
+        Tokenizer(InputStream in) {
+            this.in = in;
+        }
+        
+        private int peek() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position] & 0xff;
+        }
+        
+        // Rest of the current line, or null at end of input
+        String line() throws IOException {
+            StringBuilder text = new StringBuilder();
+            int c = peek();
+            if (c < 0) return null;
+            while (c >= 0 && c != '\n') {
+                text.append((char) c);
+                position++;
+                c = peek();
+            }
+            if (c == '\n') position++;
+            return text.toString();
+        }
+        
+        // Skips blank lines and lines starting with %
+        void skipComments() throws IOException {
+            while (true) {
+                int c = peek();
+                while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                    position++;
+                    c = peek();
+                }
+                if (c != '%') return;
+                while (c >= 0 && c != '\n') {
+                    position++;
+                    c = peek();
+                }
+            }
+        }
+        
+        private void readToken() throws IOException {
+            int c = peek();
+            while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                position++;
+                c = peek();
+            }
+            length = 0;
+            while (true) {
+                // Copy straight from the buffer until whitespace or its end
+                int p = position;
+                while (p < limit && (buffer[p] & 0xff) > ' ') {
+                    p++;
+                }
+                int count = p - position;
+                if (length + count > token.length) {
+                    token = Arrays.copyOf(token, Math.max(2 * token.length, length + count));
+                }
+                System.arraycopy(buffer, position, token, length, count);
+                length += count;
+                position = p;
+                if (p < limit || peek() <= ' ') break;
+            }
+            if (length == 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        
+        long nextLong() throws IOException {
+            readToken();
+            int k = token[0] == '-' || token[0] == '+' ? 1 : 0;
+            if (k == length || length > 18) {
+                throw new IOException("Invalid integer: " + text());
+            }
+            long value = 0;
+            for (; k < length; k++) {
+                int d = token[k] - '0';
+                if (d < 0 || d > 9) {
+                    throw new IOException("Invalid integer: " + text());
+                }
+                value = value * 10 + d;
+            }
+            return token[0] == '-' ? -value : value;
+        }
+        
+        double nextDouble() throws IOException {
+            readToken();
+            // Fast path: [sign] digits [. digits] with at most 15 significant
+            // digits, exact in a long and correctly rounded by one division
+            int k = token[0] == '-' || token[0] == '+' ? 1 : 0;
+            long mantissa = 0;
+            int digits = 0, fraction = -1;
+            for (; k < length; k++) {
+                int d = token[k] - '0';
+                if (d >= 0 && d <= 9) {
+                    mantissa = mantissa * 10 + d;
+                    digits++;
+                    if (fraction >= 0) fraction++;
+                } else if (token[k] == '.' && fraction < 0) {
+                    fraction = 0;
+                } else {
+                    break;
+                }
+            }
+            if (k == length && digits > 0 && digits <= 15) {
+                double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : (double) mantissa;
+                return token[0] == '-' ? -value : value;
+            }
+            try {
+                return Double.parseDouble(text());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid number: " + text());
+            }
+        }
+        
+        private String text() {
+            return new String(token, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
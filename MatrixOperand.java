@@ -0,0 +1,74 @@
+// A matrix held in sparse form, dense form, or both. Each form is
+// materialized on first request and kept afterwards, so callers only pay
+// for the representations they actually use.
+public class MatrixOperand {
+    final int rows, cols;
+    // Version of the matrix the operand was built from
+    final long version;
+    private SparseMatrix sparse;
+    private DenseMatrix dense;
+    private long nonZeros = -1;
+    
+    public MatrixOperand(SparseMatrix matrix) {
+        rows = matrix.rows;
+        cols = matrix.cols;
+        version = matrix.version;
+        sparse = matrix;
+    }
+    
+    public MatrixOperand(DenseMatrix matrix) {
+        rows = matrix.rows;
+        cols = matrix.cols;
+        version = matrix.version;
+        dense = matrix;
+    }
+    
+    // Both forms already at hand; dense may be null
+    public MatrixOperand(SparseMatrix sparse, DenseMatrix dense) {
+        this(sparse);
+        this.dense = dense;
+    }
+    
+    public synchronized SparseMatrix sparse() {
+        if (sparse == null) {
+            sparse = SparseMatrix.fromDense(dense);
+        }
+        return sparse;
+    }
+    
+    public synchronized DenseMatrix dense() {
+        if (dense == null) {
+            dense = sparse.toDense();
+        }
+        return dense;
+    }
+    
+    public synchronized boolean hasSparse() {
+        return sparse != null;
+    }
+    
+    public synchronized boolean hasDense() {
+        return dense != null;
+    }
+    
+    public synchronized long getNonZeroCount() {
+        if (nonZeros < 0) {
+            if (sparse != null) {
+                nonZeros = sparse.getNonZeroCount();
+            } else {
+                long count = 0;
+                for (double value : dense.data) {
+                    if (value != 0.0) count++;
+                }
+                nonZeros = count;
+            }
+        }
+        return nonZeros;
+    }
+    
+    // Fraction of entries that are nonzero
+    public double getDensity() {
+        long total = (long) rows * cols;
+        return total == 0 ? 0.0 : (double) getNonZeroCount() / total;
+    }
+}
@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for one kernel run, emitted by OperationMetrics. Recorded
+// whenever a flight recording is active, e.g. with
+//   java -XX:StartFlightRecording=filename=matrix.jfr ...
+// and shown under Matrix in JDK Mission Control or by
+//   jfr print --events matrix.Operation matrix.jfr
+@Name("matrix.Operation")
+@Label("Matrix Operation")
+@Category("Matrix")
+@Description("One matrix kernel run")
+public class MatrixOperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+    
+    @Label("Kernel")
+    String kernel;
+    
+    @Label("Non-zeros In")
+    long nnzIn;
+    
+    @Label("Non-zeros Out")
+    long nnzOut;
+    
+    @Label("Allocated")
+    @Description("Bytes allocated by all threads during the run, -1 if unknown")
+    @DataAmount
+    long allocatedBytes;
+}
@@ -0,0 +1,312 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Sparse matrix with point updates. Entries live in an immutable CSR base
+// plus a delta buffer: an open-addressing hash table from (row, col) to the
+// newest value, where 0.0 marks a deleted entry. set, remove and get cost a
+// hash probe and, for get, a binary search of the base row.
+//
+// Once the delta holds more than mergeThreshold() entries it is frozen and
+// merged into a new CSR base on the common fork-join pool, while further
+// updates go to a fresh delta. Readers therefore see up to three layers,
+// newest first: the live delta, the delta being merged, and the base.
+// snapshot() folds everything into CSR synchronously and returns it as an
+// ordinary SparseMatrix, with a new version for ResultCache.
+public class MutableSparseMatrix {
+    final int rows, cols;
+    
+    private SparseMatrix base;
+    private Delta delta;
+    private Delta merging;
+    private long nonZeros;
+    
+    // Smallest delta worth a background merge
+    private static final int MIN_MERGE_ENTRIES = 1024;
+    
+    // Merged (row, col, value) of one row, filled by readRow. Columns are
+    // not sorted.
+    public static class RowBuffer {
+        int size;
+        int[] cols = new int[16];
+        double[] values = new double[16];
+        
+        void add(int col, double value) {
+            if (size == cols.length) {
+                cols = Arrays.copyOf(cols, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            cols[size] = col;
+            values[size] = value;
+            size++;
+        }
+    }
+    
+    public MutableSparseMatrix(SparseMatrix initial) {
+        rows = initial.rows;
+        cols = initial.cols;
+        base = initial;
+        delta = new Delta(rows);
+        nonZeros = initial.getNonZeroCount();
+    }
+    
+    // Empty r x c matrix
+    public MutableSparseMatrix(int r, int c) {
+        this(new SparseMatrix(r, c));
+    }
+    
+    public synchronized double get(int row, int col) {
+        checkIndex(row, col);
+        int slot = delta.find(row, col);
+        if (slot >= 0) return delta.values[slot];
+        if (merging != null) {
+            slot = merging.find(row, col);
+            if (slot >= 0) return merging.values[slot];
+        }
+        return base.get(row, col);
+    }
+    
+    // Setting 0.0 removes the entry
+    public synchronized void set(int row, int col, double value) {
+        double old = get(row, col);
+        if (old == value) return;
+        delta.put(row, col, value);
+        nonZeros += (value != 0.0 ? 1 : 0) - (old != 0.0 ? 1 : 0);
+        if (merging == null && delta.size > mergeThreshold()) {
+            startMerge();
+        }
+    }
+    
+    public void remove(int row, int col) {
+        set(row, col, 0.0);
+    }
+    
+    public synchronized long getNonZeroCount() {
+        return nonZeros;
+    }
+    
+    // Updates waiting to be merged into the CSR base
+    public synchronized int getPendingUpdates() {
+        return delta.size + (merging != null ? merging.size : 0);
+    }
+    
+    // Fills buffer with the current entries of row i, zeros excluded
+    public synchronized void readRow(int i, RowBuffer buffer) {
+        buffer.size = 0;
+        for (int p = base.rowPtr[i]; p < base.rowPtr[i + 1]; p++) {
+            int j = base.colIdx[p];
+            if (delta.find(i, j) < 0 && (merging == null || merging.find(i, j) < 0)) {
+                buffer.add(j, base.values[p]);
+            }
+        }
+        if (merging != null) {
+            for (int s = merging.rowHead(i); s >= 0; s = merging.next[s]) {
+                int j = merging.col(s);
+                if (merging.values[s] != 0.0 && delta.find(i, j) < 0) {
+                    buffer.add(j, merging.values[s]);
+                }
+            }
+        }
+        for (int s = delta.rowHead(i); s >= 0; s = delta.next[s]) {
+            if (delta.values[s] != 0.0) {
+                buffer.add(delta.col(s), delta.values[s]);
+            }
+        }
+    }
+    
+    // All updates merged into CSR. The result is immutable; later updates
+    // do not affect it.
+    public synchronized SparseMatrix snapshot() {
+        while (merging != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a merge", e);
+            }
+        }
+        if (delta.size > 0) {
+            base = merge(base, delta);
+            delta = new Delta(rows);
+        }
+        return base;
+    }
+    
+    // A merge rewrites the whole base, so it waits until the delta is a
+    // sizeable fraction of it
+    private int mergeThreshold() {
+        return Math.max(MIN_MERGE_ENTRIES, base.getNonZeroCount() / 16);
+    }
+    
+    private void startMerge() {
+        merging = delta;
+        delta = new Delta(rows);
+        final SparseMatrix from = base;
+        final Delta frozen = merging;
+        ForkJoinPool.commonPool().execute(new Runnable() {
+            public void run() {
+                SparseMatrix merged = null;
+                try {
+                    merged = merge(from, frozen);
+                } finally {
+                    synchronized (MutableSparseMatrix.this) {
+                        if (merged != null) {
+                            base = merged;
+                        } else {
+                            // Failed: return the frozen updates to the live
+                            // delta, under any newer ones
+                            for (int s = 0; s < frozen.size; s++) {
+                                int row = (int) (frozen.keys[s] >>> 32), col = frozen.col(s);
+                                if (delta.find(row, col) < 0) {
+                                    delta.put(row, col, frozen.values[s]);
+                                }
+                            }
+                        }
+                        merging = null;
+                        MutableSparseMatrix.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+    
+    // Row-by-row merge of the sorted delta keys with the base rows. Delta
+    // values win; zeros are dropped.
+    private static SparseMatrix merge(SparseMatrix base, Delta delta) {
+        long[] keys = delta.sortedKeys();
+        int[] rowPtr = new int[base.rows + 1];
+        int capacity = base.getNonZeroCount() + keys.length;
+        int[] colIdx = new int[capacity];
+        double[] values = new double[capacity];
+        int w = 0, d = 0;
+        for (int i = 0; i < base.rows; i++) {
+            int p = base.rowPtr[i], end = base.rowPtr[i + 1];
+            while (p < end || (d < keys.length && (int) (keys[d] >>> 32) == i)) {
+                boolean fromDelta = d < keys.length && (int) (keys[d] >>> 32) == i;
+                int deltaCol = fromDelta ? (int) keys[d] : Integer.MAX_VALUE;
+                int baseCol = p < end ? base.colIdx[p] : Integer.MAX_VALUE;
+                double value;
+                int j;
+                if (deltaCol <= baseCol) {
+                    j = deltaCol;
+                    value = delta.values[delta.find(i, j)];
+                    d++;
+                    if (baseCol == deltaCol) p++;
+                } else {
+                    j = baseCol;
+                    value = base.values[p++];
+                }
+                if (value != 0.0) {
+                    colIdx[w] = j;
+                    values[w] = value;
+                    w++;
+                }
+            }
+            rowPtr[i + 1] = w;
+        }
+        if (w < capacity) {
+            colIdx = Arrays.copyOf(colIdx, w);
+            values = Arrays.copyOf(values, w);
+        }
+        return new SparseMatrix(base.rows, base.cols, rowPtr, colIdx, values);
+    }
+    
+    private void checkIndex(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("(" + row + ", " + col + ") outside " + rows + "x" + cols);
+        }
+    }
+    
+    // Open-addressing table keyed by row << 32 | col. Slots are never
+    // freed, only overwritten, so each row also threads its slots into a
+    // list through next[] for readRow.
+    private static class Delta {
+        private final int rows;
+        long[] keys = new long[64];
+        double[] values = new double[64];
+        int[] next = new int[64];
+        private int[] table = newTable(128);
+        private int[] rowHeads;
+        int size;
+        
+        Delta(int rows) {
+            this.rows = rows;
+        }
+        
+        int find(int row, int col) {
+            long key = key(row, col);
+            int mask = table.length - 1;
+            for (int h = hash(key) & mask; table[h] >= 0; h = (h + 1) & mask) {
+                if (keys[table[h]] == key) return table[h];
+            }
+            return -1;
+        }
+        
+        void put(int row, int col, double value) {
+            int slot = find(row, col);
+            if (slot >= 0) {
+                values[slot] = value;
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+                next = Arrays.copyOf(next, 2 * size);
+            }
+            if (rowHeads == null) {
+                rowHeads = new int[rows];
+                Arrays.fill(rowHeads, -1);
+            }
+            slot = size++;
+            keys[slot] = key(row, col);
+            values[slot] = value;
+            next[slot] = rowHeads[row];
+            rowHeads[row] = slot;
+            if (2 * size > table.length) {
+                table = newTable(2 * table.length);
+                for (int s = 0; s < size; s++) {
+                    insert(s);
+                }
+            } else {
+                insert(slot);
+            }
+        }
+        
+        int rowHead(int row) {
+            return rowHeads == null ? -1 : rowHeads[row];
+        }
+        
+        int col(int slot) {
+            return (int) keys[slot];
+        }
+        
+        long[] sortedKeys() {
+            long[] sorted = Arrays.copyOf(keys, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+        
+        private void insert(int slot) {
+            int mask = table.length - 1;
+            int h = hash(keys[slot]) & mask;
+            while (table[h] >= 0) {
+                h = (h + 1) & mask;
+            }
+            table[h] = slot;
+        }
+        
+        private static int[] newTable(int length) {
+            int[] table = new int[length];
+            Arrays.fill(table, -1);
+            return table;
+        }
+        
+        private static long key(int row, int col) {
+            return ((long) row << 32) | col;
+        }
+        
+        // Fibonacci hashing spreads neighbouring cells across the table
+        private static int hash(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Per-operation history of kernel runs: a latency histogram, bytes
+// allocated, and non-zeros in and out, grouped by (operation, kernel).
+// Callers bracket a kernel with start() and Sample.finish(); each finished
+// sample is also emitted as a MatrixOperationEvent for JFR recordings.
+//
+// Latencies go into a log-linear histogram, eight buckets per power of
+// two, so a percentile is within 12.5% of the true value and a series
+// costs a fixed 4 KB however many runs it records.
+//
+// Allocation is the growth of ThreadMXBean's per-thread allocation
+// counters over every live thread, which includes the fork-join workers
+// of the parallel kernels. Concurrent work on other threads is counted
+// too, and threads that exit mid-run drop out, so the figure is a close
+// estimate rather than exact. It reads -1 where the JVM lacks the counters.
+//
+// Set -Dmatrix.metrics.dump=<file> to write GLOBAL as JSON at JVM exit.
+public class OperationMetrics {
+    // Shared by the GUI and the command-line benchmark
+    static final OperationMetrics GLOBAL = new OperationMetrics();
+    
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int BUCKETS = 64 << SUB_BUCKET_BITS;
+    
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    
+    static {
+        final String dump = System.getProperty("matrix.metrics.dump");
+        if (dump != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        GLOBAL.writeJson(Paths.get(dump));
+                    } catch (IOException e) {
+                        System.err.println("Cannot write metrics to " + dump + ": " + e.getMessage());
+                    }
+                }
+            }));
+        }
+    }
+    
+    private final Map<String, Series> series = new LinkedHashMap<String, Series>();
+    
+    // One kernel run in progress
+    public class Sample {
+        private final String operation, kernel;
+        private final long nnzIn;
+        private final MatrixOperationEvent event = new MatrixOperationEvent();
+        private final long allocatedBefore;
+        private final long startNanos;
+        
+        private Sample(String operation, String kernel, long nnzIn) {
+            this.operation = operation;
+            this.kernel = kernel;
+            this.nnzIn = nnzIn;
+            allocatedBefore = allocatedBytes();
+            event.begin();
+            startNanos = System.nanoTime();
+        }
+        
+        // Records the run and returns its latency. kernel may be null to
+        // keep the one given to start(), or name a kernel picked at run time.
+        public long finish(Object result, String kernel) {
+            long elapsed = System.nanoTime() - startNanos;
+            event.end();
+            long allocatedAfter = allocatedBytes();
+            long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1
+                    : Math.max(0, allocatedAfter - allocatedBefore);
+            long nnzOut = nonZeros(result);
+            String name = kernel != null ? kernel : this.kernel;
+            record(operation, name, elapsed, allocated, nnzIn, nnzOut);
+            
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.kernel = name;
+                event.nnzIn = nnzIn;
+                event.nnzOut = nnzOut;
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+            return elapsed;
+        }
+        
+        public long finish(Object result) {
+            return finish(result, null);
+        }
+    }
+    
+    // Snapshot of one (operation, kernel) series
+    public static class Summary {
+        final String operation, kernel;
+        final long count;
+        final long meanNanos, p50Nanos, p90Nanos, p99Nanos, maxNanos;
+        final long meanAllocatedBytes;
+        final long lastNnzIn, lastNnzOut;
+        
+        Summary(String operation, String kernel, long count, long meanNanos, long p50Nanos, long p90Nanos,
+                long p99Nanos, long maxNanos, long meanAllocatedBytes, long lastNnzIn, long lastNnzOut) {
+            this.operation = operation;
+            this.kernel = kernel;
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+            this.meanAllocatedBytes = meanAllocatedBytes;
+            this.lastNnzIn = lastNnzIn;
+            this.lastNnzOut = lastNnzOut;
+        }
+    }
+    
+    private static class Series {
+        final String operation, kernel;
+        final long[] histogram = new long[BUCKETS];
+        long count, totalNanos, maxNanos;
+        long allocatedSamples, totalAllocated;
+        long lastNnzIn, lastNnzOut;
+        
+        Series(String operation, String kernel) {
+            this.operation = operation;
+            this.kernel = kernel;
+        }
+        
+        // Smallest bucket value with at least fraction of the samples at or
+        // below it, reported as the bucket midpoint and capped at the maximum
+        long percentile(double fraction) {
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += histogram[b];
+                if (seen >= rank) {
+                    long low = bucketLow(b);
+                    return Math.min(maxNanos, low + (bucketLow(b + 1) - low) / 2);
+                }
+            }
+            return maxNanos;
+        }
+    }
+    
+    // nnzIn is the total non-zeros of the operands
+    public Sample start(String operation, String kernel, long nnzIn) {
+        return new Sample(operation, kernel, nnzIn);
+    }
+    
+    public synchronized void record(String operation, String kernel, long nanos, long allocatedBytes,
+            long nnzIn, long nnzOut) {
+        String key = operation + "\u0000" + kernel;
+        Series s = series.get(key);
+        if (s == null) {
+            s = new Series(operation, kernel);
+            series.put(key, s);
+        }
+        s.histogram[bucket(nanos)]++;
+        s.count++;
+        s.totalNanos += nanos;
+        s.maxNanos = Math.max(s.maxNanos, nanos);
+        if (allocatedBytes >= 0) {
+            s.allocatedSamples++;
+            s.totalAllocated += allocatedBytes;
+        }
+        s.lastNnzIn = nnzIn;
+        s.lastNnzOut = nnzOut;
+    }
+    
+    public synchronized List<Summary> summaries() {
+        List<Summary> list = new ArrayList<Summary>(series.size());
+        for (Series s : series.values()) {
+            list.add(new Summary(s.operation, s.kernel, s.count, s.totalNanos / s.count,
+                    s.percentile(0.50), s.percentile(0.90), s.percentile(0.99), s.maxNanos,
+                    s.allocatedSamples == 0 ? -1 : s.totalAllocated / s.allocatedSamples,
+                    s.lastNnzIn, s.lastNnzOut));
+        }
+        return list;
+    }
+    
+    public synchronized void reset() {
+        series.clear();
+    }
+    
+    // One JSON object with a "series" array, one entry per (operation, kernel)
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"series\":[");
+        List<Summary> list = summaries();
+        for (int i = 0; i < list.size(); i++) {
+            Summary s = list.get(i);
+            if (i > 0) json.append(',');
+            json.append(String.format(Locale.ROOT,
+                    "\n{\"operation\":\"%s\",\"kernel\":\"%s\",\"count\":%d,\"meanNanos\":%d,"
+                    + "\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,\"maxNanos\":%d,"
+                    + "\"meanAllocatedBytes\":%d,\"lastNnzIn\":%d,\"lastNnzOut\":%d}",
+                    escape(s.operation), escape(s.kernel), s.count, s.meanNanos, s.p50Nanos, s.p90Nanos,
+                    s.p99Nanos, s.maxNanos, s.meanAllocatedBytes, s.lastNnzIn, s.lastNnzOut));
+        }
+        return json.append("\n]}\n").toString();
+    }
+    
+    public void writeJson(Path path) throws IOException {
+        Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        try {
+            out.write(toJson());
+        } finally {
+            out.close();
+        }
+    }
+    
+    // Non-zeros of a kernel input or result; -1 for anything without them
+    static long nonZeros(Object value) {
+        if (value instanceof SparseMatrix) return ((SparseMatrix) value).getNonZeroCount();
+        if (value instanceof MatrixOperand) return ((MatrixOperand) value).getNonZeroCount();
+        if (value instanceof MappedSparseMatrix) return ((MappedSparseMatrix) value).getNonZeroCount();
+        if (value instanceof DenseMatrix) return countNonZeros(((DenseMatrix) value).data);
+        if (value instanceof DiaMatrix) return ((DiaMatrix) value).getNonZeroCount();
+        if (value instanceof EllMatrix) return ((EllMatrix) value).getNonZeroCount();
+        if (value instanceof BsrMatrix) return ((BsrMatrix) value).getNonZeroCount();
+        if (value instanceof CompactSparseMatrix) return ((CompactSparseMatrix) value).getNonZeroCount();
+        if (value instanceof CompactDenseMatrix) return ((CompactDenseMatrix) value).getNonZeroCount();
+        if (value instanceof double[]) return countNonZeros((double[]) value);
+        return -1;
+    }
+    
+    private static long countNonZeros(double[] data) {
+        long count = 0;
+        for (double v : data) {
+            if (v != 0.0) count++;
+        }
+        return count;
+    }
+    
+    // Bytes allocated so far by all live threads, or -1 if unsupported
+    private static long allocatedBytes() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return -1;
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+    
+    // Values below 2^SUB_BUCKET_BITS get a bucket each; above that, each
+    // power of two is split into 2^SUB_BUCKET_BITS equal buckets
+    private static int bucket(long nanos) {
+        if (nanos < (1 << SUB_BUCKET_BITS)) return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+    
+    private static long bucketLow(int b) {
+        if (b < (1 << SUB_BUCKET_BITS)) return b;
+        int exponent = (b >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        if (exponent >= 63) return Long.MAX_VALUE;
+        long sub = b & ((1 << SUB_BUCKET_BITS) - 1);
+        return (1L << exponent) + (sub << (exponent - SUB_BUCKET_BITS));
+    }
+    
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Progress and cancellation shared between a running kernel and the code
+// that started it. Kernels declare their work in rows, report rows as
+// they finish them, and stop by throwing CancellationException from
+// rowsDone once the operation has been cancelled.
+public class OperationProgress {
+    // For callers that neither watch progress nor cancel
+    static final OperationProgress NONE = new OperationProgress();
+    
+    private final LongAdder rowsDone = new LongAdder();
+    private final AtomicLong totalRows = new AtomicLong();
+    private volatile boolean cancelled;
+    
+    public void addWork(long rows) {
+        totalRows.addAndGet(rows);
+    }
+    
+    public void rowsDone(int rows) {
+        rowsDone.add(rows);
+        if (cancelled) {
+            throw new CancellationException("Operation cancelled");
+        }
+    }
+    
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public int getPercent() {
+        long total = totalRows.get();
+        if (total <= 0) return 0;
+        return (int) Math.min(100, rowsDone.sum() * 100 / total);
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Sparse A * B for inputs and results larger than the heap. A and B are
+// SparseMatrixIO files and stay memory-mapped; the heap only ever holds
+// per-tile scratch arrays, so memory use is fixed by the tile sizes rather
+// than by the matrices.
+//
+//   1. B is split by column into tiles of tileCols columns, each written
+//      to its own mapped file with tile-local column indices.
+//   2. For every row tile of A (tileRows rows) and column tile of B, the
+//      output block is computed by Gustavson SpGEMM with an accumulator of
+//      tileCols entries and streamed to a block file as it is produced.
+//   3. The blocks of each row tile are read back sequentially and
+//      stitched row by row into one SparseMatrixIO file, which is
+//      returned mapped.
+//
+// Open mappings are bounded by the number of column tiles, so tiles should
+// be thousands of columns wide rather than a handful.
+//
+// Scratch files live in a temporary directory under workDir and are
+// removed when the multiply finishes, fails or is cancelled; a failed or
+// cancelled multiply also deletes the partly written output.
+public class OutOfCoreMultiplier {
+    private final Path workDir;
+    private final int tileRows, tileCols;
+    
+    private static final int STREAM_BUFFER_BYTES = 1 << 14;
+    
+    public OutOfCoreMultiplier(Path workDir, int tileRows, int tileCols) {
+        if (tileRows <= 0 || tileCols <= 0) {
+            throw new IllegalArgumentException("Tile sizes must be positive");
+        }
+        this.workDir = workDir;
+        this.tileRows = tileRows;
+        this.tileCols = tileCols;
+    }
+    
+    public MappedSparseMatrix multiply(Path aFile, Path bFile, Path output, OperationProgress progress)
+            throws IOException {
+        MappedSparseMatrix a = SparseMatrixIO.map(aFile);
+        MappedSparseMatrix b = SparseMatrixIO.map(bFile);
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Cannot multiply " + a.rows + "x" + a.cols + " by "
+                    + b.rows + "x" + b.cols);
+        }
+        int rowTiles = (a.rows + tileRows - 1) / tileRows;
+        int colTiles = (b.cols + tileCols - 1) / tileCols;
+        progress.addWork((long) b.rows + (long) a.rows * colTiles + a.rows);
+        
+        Path scratch = Files.createTempDirectory(workDir, "spgemm");
+        boolean writingOutput = false;
+        MappedSparseMatrix result;
+        try {
+            MappedSparseMatrix[] bTiles = splitColumns(b, colTiles, scratch, progress);
+            
+            // One block file per (row tile, column tile)
+            long total = 0;
+            int[] marker = new int[tileCols];
+            double[] accumulator = new double[tileCols];
+            int[] columns = new int[tileCols];
+            for (int r = 0; r < rowTiles; r++) {
+                int from = r * tileRows;
+                int to = Math.min(a.rows, from + tileRows);
+                for (int c = 0; c < colTiles; c++) {
+                    total += multiplyBlock(a, bTiles[c], from, to, marker, accumulator, columns,
+                            blockFile(scratch, r, c), progress);
+                    if (total > MatrixGenerator.MAX_NONZEROS) {
+                        throw new IllegalArgumentException("Product has too many non-zero elements");
+                    }
+                }
+            }
+            
+            writingOutput = true;
+            result = assemble(a.rows, b.cols, (int) total, rowTiles, colTiles, scratch, output, progress);
+        } catch (Throwable e) {
+            // A failed or cancelled multiply leaves neither scratch files nor
+            // a partial output behind. Cleanup errors are attached to e
+            // rather than replacing it.
+            if (writingOutput) deleteAfterFailure(output, e);
+            deleteAfterFailure(scratch, e);
+            throw e;
+        }
+        deleteDirectory(scratch);
+        return result;
+    }
+    
+    // Pass 1 counts the entries of each column tile, pass 2 fills the
+    // mapped tile files row by row.
+    private MappedSparseMatrix[] splitColumns(MappedSparseMatrix b, int colTiles, Path scratch,
+            OperationProgress progress) throws IOException {
+        int[] nnz = new int[colTiles];
+        for (int p = 0; p < b.getNonZeroCount(); p++) {
+            nnz[b.colIndex(p) / tileCols]++;
+        }
+        MappedSparseMatrix[] tiles = new MappedSparseMatrix[colTiles];
+        for (int c = 0; c < colTiles; c++) {
+            int width = Math.min(tileCols, b.cols - c * tileCols);
+            tiles[c] = SparseMatrixIO.create(scratch.resolve("b-" + c), b.rows, width, nnz[c]);
+        }
+        
+        int[] next = new int[colTiles];
+        for (int k = 0; k < b.rows; k++) {
+            for (int c = 0; c < colTiles; c++) {
+                tiles[c].setRowStart(k, next[c]);
+            }
+            // Columns within a row are sorted, so tiles are visited in order
+            for (int p = b.rowStart(k); p < b.rowStart(k + 1); p++) {
+                int j = b.colIndex(p);
+                int c = j / tileCols;
+                tiles[c].setEntry(next[c]++, j - c * tileCols, b.value(p));
+            }
+            progress.rowsDone(1);
+        }
+        for (int c = 0; c < colTiles; c++) {
+            tiles[c].setRowStart(b.rows, next[c]);
+        }
+        return tiles;
+    }
+    
+    // Rows [from, to) of A times one column tile of B, streamed to file as
+    // one record per row: the entry count, then (column, value) pairs.
+    // Entries that cancel to zero are dropped here. Returns the number of
+    // entries written.
+    private long multiplyBlock(MappedSparseMatrix a, MappedSparseMatrix b, int from, int to, int[] marker,
+            double[] accumulator, int[] columns, Path file, OperationProgress progress) throws IOException {
+        Arrays.fill(marker, -1);
+        long nnz = 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file),
+                STREAM_BUFFER_BYTES));
+        try {
+            for (int i = from; i < to; i++) {
+                int end = 0;
+                for (int p = a.rowStart(i); p < a.rowStart(i + 1); p++) {
+                    int k = a.colIndex(p);
+                    double valA = a.value(p);
+                    for (int q = b.rowStart(k); q < b.rowStart(k + 1); q++) {
+                        int j = b.colIndex(q);
+                        if (marker[j] != i) {
+                            marker[j] = i;
+                            columns[end++] = j;
+                            accumulator[j] = valA * b.value(q);
+                        } else {
+                            accumulator[j] += valA * b.value(q);
+                        }
+                    }
+                }
+                Arrays.sort(columns, 0, end);
+                int count = 0;
+                for (int e = 0; e < end; e++) {
+                    if (accumulator[columns[e]] != 0.0) count++;
+                }
+                out.writeInt(count);
+                for (int e = 0; e < end; e++) {
+                    double value = accumulator[columns[e]];
+                    if (value != 0.0) {
+                        out.writeInt(columns[e]);
+                        out.writeDouble(value);
+                    }
+                }
+                nnz += count;
+                progress.rowsDone(1);
+            }
+        } finally {
+            out.close();
+        }
+        return nnz;
+    }
+    
+    // Concatenates the blocks of every output row into one mapped file.
+    // Only the blocks of the current row tile are open at a time.
+    private MappedSparseMatrix assemble(int rows, int cols, int nnz, int rowTiles, int colTiles, Path scratch,
+            Path output, OperationProgress progress) throws IOException {
+        MappedSparseMatrix result = SparseMatrixIO.create(output, rows, cols, nnz);
+        int offset = 0;
+        for (int r = 0; r < rowTiles; r++) {
+            DataInputStream[] blocks = new DataInputStream[colTiles];
+            try {
+                for (int c = 0; c < colTiles; c++) {
+                    blocks[c] = new DataInputStream(new BufferedInputStream(
+                            Files.newInputStream(blockFile(scratch, r, c)), STREAM_BUFFER_BYTES));
+                }
+                int from = r * tileRows;
+                int to = Math.min(rows, from + tileRows);
+                for (int i = from; i < to; i++) {
+                    result.setRowStart(i, offset);
+                    for (int c = 0; c < colTiles; c++) {
+                        int base = c * tileCols;
+                        for (int count = blocks[c].readInt(); count > 0; count--) {
+                            int j = blocks[c].readInt();
+                            result.setEntry(offset++, base + j, blocks[c].readDouble());
+                        }
+                    }
+                    progress.rowsDone(1);
+                }
+            } finally {
+                for (DataInputStream block : blocks) {
+                    if (block != null) block.close();
+                }
+            }
+            for (int c = 0; c < colTiles; c++) {
+                Files.delete(blockFile(scratch, r, c));
+            }
+        }
+        result.setRowStart(rows, offset);
+        return result;
+    }
+    
+    private static Path blockFile(Path scratch, int r, int c) {
+        return scratch.resolve("c-" + r + "-" + c);
+    }
+    
+    private static void deleteAfterFailure(Path path, Throwable failure) {
+        try {
+            if (Files.isDirectory(path)) deleteDirectory(path);
+            else Files.deleteIfExists(path);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+    
+    private static void deleteDirectory(Path directory) throws IOException {
+        DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+        try {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } finally {
+            files.close();
+        }
+        Files.deleteIfExists(directory);
+    }
+}
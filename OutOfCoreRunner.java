@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+// The "out-of-core" kernel (multiply only): A and B are saved under
+// --work-dir before timing, and every run multiplies them from disk in
+// --tile sized tiles into a third file.
+class OutOfCoreRunner extends BenchmarkRunner {
+    private OutOfCoreMultiplier multiplier;
+    private Path fileA, fileB, fileOut;
+    
+    OutOfCoreRunner(MatrixBenchmark benchmark) {
+        super(benchmark);
+    }
+    
+    void prepare(ForkJoinPool pool) {
+        super.prepare(pool);
+        Path dir = Paths.get(benchmark.workDir);
+        multiplier = new OutOfCoreMultiplier(dir, benchmark.tile, benchmark.tile);
+        try {
+            fileA = Files.createTempFile(dir, "a", ".spm");
+            fileB = Files.createTempFile(dir, "b", ".spm");
+            fileOut = Files.createTempFile(dir, "c", ".spm");
+            SparseMatrixIO.save(a, fileA);
+            SparseMatrixIO.save(b, fileB);
+        } catch (IOException e) {
+            System.err.println("Cannot write to " + benchmark.workDir + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    Object run(ForkJoinPool pool) {
+        try {
+            return multiplier.multiply(fileA, fileB, fileOut, OperationProgress.NONE);
+        } catch (IOException e) {
+            System.err.println("Out-of-core multiply failed: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+    
+    void finish() {
+        deleteQuietly(fileA);
+        deleteQuietly(fileB);
+        deleteQuietly(fileOut);
+    }
+    
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("warning: cannot delete " + file);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.Locale;
+
+// Storage precision of CompactValues. The integer precisions store exact
+// integers only; FLOAT32 rounds each value to the nearest float.
+public enum Precision {
+    FLOAT64(8), FLOAT32(4), INT32(4), INT8(1);
+    
+    final int bytes;
+    
+    Precision(int bytes) {
+        this.bytes = bytes;
+    }
+    
+    public boolean isInteger() {
+        return this == INT32 || this == INT8;
+    }
+    
+    // Narrowest precision that holds every value exactly
+    public static Precision narrowest(double[] values, int length) {
+        boolean int8 = true, int32 = true, float32 = true;
+        for (int p = 0; p < length && (int32 || float32); p++) {
+            double v = values[p];
+            int8 &= v == (byte) v;
+            int32 &= v == (int) v;
+            float32 &= v == (float) v;
+        }
+        return int8 ? INT8 : int32 ? INT32 : float32 ? FLOAT32 : FLOAT64;
+    }
+    
+    // Narrowest precision holding both the values that fit a and those
+    // that fit b. int32 and float32 each hold values the other cannot.
+    public static Precision holding(Precision a, Precision b) {
+        if (a == b || b == INT8) return a;
+        if (a == INT8) return b;
+        return FLOAT64;
+    }
+    
+    // Narrowest integer precision for values of at most maxAbs in magnitude,
+    // or FLOAT64 past the int range
+    static Precision forIntegers(double maxAbs) {
+        if (maxAbs <= Byte.MAX_VALUE) return INT8;
+        if (maxAbs <= Integer.MAX_VALUE) return INT32;
+        return FLOAT64;
+    }
+    
+    // Floating precision for a result of a and b that is not integer-only:
+    // float32 only when every value of both fits it, so an int32 operand
+    // next to a float32 one gives float64
+    static Precision floating(Precision a, Precision b) {
+        return holding(a, b) == FLOAT32 ? FLOAT32 : FLOAT64;
+    }
+    
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+    
+    public static Precision parse(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown precision " + name);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+// Results of earlier operations, keyed by the operation and the versions
+// of its operands. Matrices never change after construction, so a key
+// cannot go stale; a regenerated or reloaded matrix simply has a new
+// version. Sparse and dense copies of a matrix share a version, so a
+// result computed by one kernel also serves the others: results are held
+// as MatrixOperand and converted to the form a caller needs on a hit.
+//
+// Entries are evicted least recently used first once their estimated
+// size exceeds the byte budget. A result larger than the whole budget is
+// not cached.
+public class ResultCache {
+    private final long capacityBytes;
+    private long usedBytes;
+    private long hits, misses, evictions;
+    
+    // Access order, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    
+    private static class Entry {
+        final MatrixOperand result;
+        long size;
+        
+        Entry(MatrixOperand result, long size) {
+            this.result = result;
+            this.size = size;
+        }
+    }
+    
+    public static class Key {
+        private final String operation;
+        private final long[] versions;
+        
+        Key(String operation, long[] versions) {
+            this.operation = operation;
+            this.versions = versions;
+        }
+        
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return operation.equals(key.operation) && Arrays.equals(versions, key.versions);
+        }
+        
+        public int hashCode() {
+            return 31 * operation.hashCode() + Arrays.hashCode(versions);
+        }
+        
+        public String toString() {
+            return operation + Arrays.toString(versions);
+        }
+    }
+    
+    public ResultCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+    
+    // Operands are SparseMatrix, DenseMatrix or MatrixOperand
+    public static Key key(String operation, Object... operands) {
+        long[] versions = new long[operands.length];
+        for (int k = 0; k < operands.length; k++) {
+            versions[k] = versionOf(operands[k]);
+        }
+        return new Key(operation, versions);
+    }
+    
+    // The cached result, or null; counts a hit or a miss
+    public synchronized MatrixOperand get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+            return entry.result;
+        }
+        misses++;
+        return null;
+    }
+    
+    public synchronized void put(Key key, MatrixOperand result) {
+        long size = sizeOf(result);
+        if (size > capacityBytes) return;
+        Entry previous = entries.put(key, new Entry(result, size));
+        if (previous != null) {
+            usedBytes -= previous.size;
+        }
+        usedBytes += size;
+        evict();
+    }
+    
+    // Charges an entry for forms its result gained since it was added,
+    // e.g. the dense copy made when a dense caller hit a sparse result
+    public synchronized void update(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return;
+        long size = sizeOf(entry.result);
+        usedBytes += size - entry.size;
+        entry.size = size;
+        evict();
+    }
+    
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (usedBytes > capacityBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().size;
+            eldest.remove();
+            evictions++;
+        }
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+    public synchronized String describe() {
+        return String.format(Locale.ROOT, "cache %d hits, %d misses, %d evictions, %d entries, %.1f of %.1f MB",
+                hits, misses, evictions, entries.size(), usedBytes / (1024.0 * 1024.0),
+                capacityBytes / (1024.0 * 1024.0));
+    }
+    
+    static long versionOf(Object operand) {
+        if (operand instanceof SparseMatrix) return ((SparseMatrix) operand).version;
+        if (operand instanceof DenseMatrix) return ((DenseMatrix) operand).version;
+        if (operand instanceof MatrixOperand) return ((MatrixOperand) operand).version;
+        throw new IllegalArgumentException("Not a matrix: " + operand);
+    }
+    
+    // Heap held by the result's arrays, ignoring object headers
+    static long sizeOf(MatrixOperand result) {
+        long size = 0;
+        if (result.hasSparse()) {
+            SparseMatrix m = result.sparse();
+            size += 4L * (m.rows + 1) + 12L * m.getNonZeroCount();
+        }
+        if (result.hasDense()) {
+            size += 8L * result.dense().data.length;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,23 @@
+public class ScalarKernels implements DenseKernels {
+    public String getName() {
+        return "Scalar";
+    }
+    
+    public void add(double[] x, double[] y, double[] z, int from, int to) {
+        for (int p = from; p < to; p++) {
+            z[p] = x[p] + y[p];
+        }
+    }
+    
+    public void subtract(double[] x, double[] y, double[] z, int from, int to) {
+        for (int p = from; p < to; p++) {
+            z[p] = x[p] - y[p];
+        }
+    }
+    
+    public void axpy(double alpha, double[] x, int xOff, double[] z, int zOff, int len) {
+        for (int j = 0; j < len; j++) {
+            z[zOff + j] += alpha * x[xOff + j];
+        }
+    }
+}
@@ -0,0 +1,14 @@
+public class SparseElement {
+    int row, col;
+    double value;
+    
+    public SparseElement(int r, int c, double v) {
+        row = r;
+        col = c; 
+        value = v;
+    }
+    
+    public String toString() {
+        return String.format("(%d, %d) = %.1f", row, col, value);
+    }
+}
@@ -0,0 +1,282 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compressed sparse row storage: the entries of row i live in
+// colIdx/values[rowPtr[i] .. rowPtr[i + 1]), sorted by column.
+// A compressed sparse column mirror is built on first column access.
+//
+// Matrices are not modified after construction, so the version stamped
+// on each instance identifies its contents for ResultCache. Conversions
+// between sparse and dense form keep the version, since the contents are
+// the same.
+public class SparseMatrix {
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    
+    final int rows, cols;
+    final int[] rowPtr;
+    final int[] colIdx;
+    final double[] values;
+    final long version;
+    
+    private int[] colPtr, rowIdx;
+    private double[] colValues;
+    
+    public SparseMatrix(int r, int c, int[] rowPtr, int[] colIdx, double[] values) {
+        this(r, c, rowPtr, colIdx, values, nextVersion());
+    }
+    
+    SparseMatrix(int r, int c, int[] rowPtr, int[] colIdx, double[] values, long version) {
+        rows = r;
+        cols = c;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+        this.version = version;
+    }
+    
+    // Versions are shared with DenseMatrix, so no two matrices of either
+    // kind carry the same one
+    static long nextVersion() {
+        return VERSIONS.incrementAndGet();
+    }
+    
+    // Empty r x c matrix
+    public SparseMatrix(int r, int c) {
+        this(r, c, new int[r + 1], new int[0], new double[0]);
+    }
+    
+    public static SparseMatrix fromDense(DenseMatrix dense) {
+        int r = dense.rows;
+        int c = dense.cols;
+        double[] data = dense.data;
+        
+        int nnz = 0;
+        for (int p = 0; p < data.length; p++) {
+            if (data[p] != 0.0) nnz++;
+        }
+        
+        int[] rowPtr = new int[r + 1];
+        int[] colIdx = new int[nnz];
+        double[] values = new double[nnz];
+        int k = 0;
+        for (int i = 0; i < r; i++) {
+            int offset = i * c;
+            for (int j = 0; j < c; j++) {
+                if (data[offset + j] != 0.0) {
+                    colIdx[k] = j;
+                    values[k] = data[offset + j];
+                    k++;
+                }
+            }
+            rowPtr[i + 1] = k;
+        }
+        return new SparseMatrix(r, c, rowPtr, colIdx, values, dense.version);
+    }
+    
+    public static SparseMatrix fromDense(double[][] dense) {
+        int r = dense.length;
+        int c = r == 0 ? 0 : dense[0].length;
+        
+        int nnz = 0;
+        for (int i = 0; i < r; i++) {
+            double[] row = dense[i];
+            for (int j = 0; j < c; j++) {
+                if (row[j] != 0.0) nnz++;
+            }
+        }
+        
+        int[] rowPtr = new int[r + 1];
+        int[] colIdx = new int[nnz];
+        double[] values = new double[nnz];
+        int k = 0;
+        for (int i = 0; i < r; i++) {
+            double[] row = dense[i];
+            for (int j = 0; j < c; j++) {
+                if (row[j] != 0.0) {
+                    colIdx[k] = j;
+                    values[k] = row[j];
+                    k++;
+                }
+            }
+            rowPtr[i + 1] = k;
+        }
+        return new SparseMatrix(r, c, rowPtr, colIdx, values);
+    }
+    
+    // Builds CSR from an unordered coordinate (COO) list. Zeros are dropped
+    // and duplicate coordinates are summed.
+    public static SparseMatrix fromCoordinates(int r, int c, List<SparseElement> elements) {
+        int n = elements.size();
+        
+        // Counting sort by column, then a stable counting sort by row,
+        // leaves every row sorted by column.
+        int[] colCount = new int[c + 1];
+        for (SparseElement e : elements) colCount[e.col + 1]++;
+        for (int j = 0; j < c; j++) colCount[j + 1] += colCount[j];
+        SparseElement[] byCol = new SparseElement[n];
+        for (SparseElement e : elements) byCol[colCount[e.col]++] = e;
+        
+        int[] rowCount = new int[r + 1];
+        for (SparseElement e : byCol) rowCount[e.row + 1]++;
+        for (int i = 0; i < r; i++) rowCount[i + 1] += rowCount[i];
+        int[] next = Arrays.copyOf(rowCount, r);
+        int[] colIdx = new int[n];
+        double[] values = new double[n];
+        for (SparseElement e : byCol) {
+            int p = next[e.row]++;
+            colIdx[p] = e.col;
+            values[p] = e.value;
+        }
+        
+        // Compact in place: merge duplicates and drop zeros
+        int[] rowPtr = new int[r + 1];
+        int k = 0;
+        for (int i = 0; i < r; i++) {
+            int rowBegin = k;
+            for (int p = rowCount[i]; p < rowCount[i + 1]; p++) {
+                if (k > rowBegin && colIdx[k - 1] == colIdx[p]) {
+                    values[k - 1] += values[p];
+                } else {
+                    colIdx[k] = colIdx[p];
+                    values[k] = values[p];
+                    k++;
+                }
+            }
+            int w = rowBegin;
+            for (int p = rowBegin; p < k; p++) {
+                if (values[p] != 0.0) {
+                    colIdx[w] = colIdx[p];
+                    values[w] = values[p];
+                    w++;
+                }
+            }
+            k = w;
+            rowPtr[i + 1] = k;
+        }
+        if (k < n) {
+            colIdx = Arrays.copyOf(colIdx, k);
+            values = Arrays.copyOf(values, k);
+        }
+        return new SparseMatrix(r, c, rowPtr, colIdx, values);
+    }
+    
+    public List<SparseElement> toCoordinates() {
+        List<SparseElement> list = new ArrayList<SparseElement>(getNonZeroCount());
+        for (int i = 0; i < rows; i++) {
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                list.add(new SparseElement(i, colIdx[p], values[p]));
+            }
+        }
+        return list;
+    }
+    
+    public double get(int row, int col) {
+        int p = Arrays.binarySearch(colIdx, rowPtr[row], rowPtr[row + 1], col);
+        return p >= 0 ? values[p] : 0.0;
+    }
+    
+    // CSC accessors: the entries of column j live in
+    // rowIdx/colValues[colPtr[j] .. colPtr[j + 1]), sorted by row.
+    public int[] colPtr() {
+        buildColumnIndex();
+        return colPtr;
+    }
+    
+    public int[] rowIdx() {
+        buildColumnIndex();
+        return rowIdx;
+    }
+    
+    public double[] colValues() {
+        buildColumnIndex();
+        return colValues;
+    }
+    
+    private synchronized void buildColumnIndex() {
+        if (colPtr != null) return;
+        int nnz = getNonZeroCount();
+        int[] ptr = new int[cols + 1];
+        int[] idx = new int[nnz];
+        double[] vals = new double[nnz];
+        transposeInto(this, ptr, idx, vals);
+        rowIdx = idx;
+        colValues = vals;
+        colPtr = ptr;
+    }
+    
+    // Starts a lazy expression over this matrix; see MatrixExpression
+    public MatrixExpression lazy() {
+        return MatrixExpression.of(this);
+    }
+    
+    // Reinterprets this CSR matrix as the CSC form of its transpose.
+    // No data is copied; the view shares this matrix's arrays.
+    public CscMatrix transposeView() {
+        return new CscMatrix(cols, rows, rowPtr, colIdx, values);
+    }
+    
+    // Two-pass counting-sort transpose of m into caller-supplied arrays:
+    // ptr (length m.cols + 1) receives the row pointers of the transpose,
+    // idx/vals (length >= nnz) its column indices and values. Visiting
+    // the input rows in order leaves every output row sorted.
+    static void transposeInto(SparseMatrix m, int[] ptr, int[] idx, double[] vals) {
+        transposeInto(m, ptr, idx, vals, OperationProgress.NONE);
+    }
+    
+    // As above, reporting each scattered input row to progress
+    static void transposeInto(SparseMatrix m, int[] ptr, int[] idx, double[] vals, OperationProgress progress) {
+        int nnz = m.getNonZeroCount();
+        
+        // Histogram of entries per column, then prefix sums
+        Arrays.fill(ptr, 0, m.cols + 1, 0);
+        for (int p = 0; p < nnz; p++) ptr[m.colIdx[p] + 1]++;
+        for (int j = 0; j < m.cols; j++) ptr[j + 1] += ptr[j];
+        
+        // Scatter, using ptr[j] as the insertion cursor of output row j
+        for (int i = 0; i < m.rows; i++) {
+            for (int p = m.rowPtr[i]; p < m.rowPtr[i + 1]; p++) {
+                int q = ptr[m.colIdx[p]]++;
+                idx[q] = i;
+                vals[q] = m.values[p];
+            }
+            progress.rowsDone(1);
+        }
+        
+        // Every cursor now sits at the start of the next row; shift back
+        System.arraycopy(ptr, 0, ptr, 1, m.cols);
+        ptr[0] = 0;
+    }
+    
+    public double[][] toDenseMatrix() {
+        double[][] dense = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            double[] row = dense[i];
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                row[colIdx[p]] = values[p];
+            }
+        }
+        return dense;
+    }
+    
+    public DenseMatrix toDense() {
+        DenseMatrix dense = new DenseMatrix(rows, cols, version);
+        for (int i = 0; i < rows; i++) {
+            int offset = i * cols;
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                dense.data[offset + colIdx[p]] = values[p];
+            }
+        }
+        return dense;
+    }
+    
+    public int getNonZeroCount() {
+        return rowPtr[rows];
+    }
+    
+    public double getSparsity() {
+        long total = (long) rows * cols;
+        return (1.0 - (double) getNonZeroCount() / total) * 100.0;
+    }
+}
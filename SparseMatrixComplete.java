@@ -1,73 +1,217 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class SparseMatrixComplete extends JFrame {
     
     // GUI Components
     private JTextField sizeField;
     private JTextField densityField;
+    private JTextField threadsField;
+    private JTextField seedField;
+    private JComboBox<String> kernelBox;
     private JTable matrix1Table, matrix2Table, resultTable;
     private JTextArea sparseInfoArea;
     private JLabel timeLabel;
-    private DefaultTableModel model1, model2, modelResult;
+    private MetricsTableModel metricsModel;
+    private MatrixTableModel model1, model2, modelResult;
     
-    // Data storage
-    private double[][] matrix1, matrix2, resultMatrix;
-    private SparseMatrix sparseMatrix1, sparseMatrix2;
+    // Data storage. Dense copies are kept only up to MAX_DENSE_SIZE; larger
+    // matrices exist in sparse form only.
+    private static final int MAX_DENSE_SIZE = 1000;
+    private DenseMatrix matrix1, matrix2, resultMatrix;
+    private SparseMatrix sparseMatrix1, sparseMatrix2, sparseResultMatrix;
     
-    // Sparse Matrix Class
-    class SparseElement {
-        int row, col;
-        double value;
+    // Results of add, subtract, multiply and transpose, reused when an
+    // operation is repeated on the same inputs by any kernel
+    private static final List<String> CACHED_OPERATIONS = Arrays.asList("add", "subtract", "multiply", "transpose");
+    private final ResultCache resultCache = new ResultCache(Math.min(256L << 20,
+            Runtime.getRuntime().maxMemory() / 4));
+    
+    // Last directory used by the load/save dialogs
+    private File lastDirectory;
+    
+    // Worker pool for the parallel kernels, rebuilt when the thread count changes
+    private ForkJoinPool kernelPool;
+    
+    // Operation currently running in the background, if any
+    private OperationWorker<?> currentWorker;
+    private final List<JButton> operationButtons = new ArrayList<JButton>();
+    private JButton cancelButton;
+    private JProgressBar progressBar;
+    private Timer progressTimer;
+    
+    // Table model that reads cells on demand from the backing dense or
+    // sparse matrix. Nothing is copied or boxed up front, so showing a
+    // matrix costs the same whatever its size.
+    static class MatrixTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        
+        private DenseMatrix dense;
+        private SparseMatrix sparse;
+        private int rows, cols;
+        
+        public void setMatrix(DenseMatrix matrix) {
+            dense = matrix;
+            sparse = null;
+            rows = matrix == null ? 0 : matrix.rows;
+            cols = matrix == null ? 0 : matrix.cols;
+            fireTableStructureChanged();
+        }
+        
+        public void setMatrix(SparseMatrix matrix) {
+            dense = null;
+            sparse = matrix;
+            rows = matrix == null ? 0 : matrix.rows;
+            cols = matrix == null ? 0 : matrix.cols;
+            fireTableStructureChanged();
+        }
+        
+        // Unboxed cell access for the renderer
+        public double getDouble(int row, int col) {
+            if (dense != null) return dense.get(row, col);
+            if (sparse != null) return sparse.get(row, col);
+            return 0.0;
+        }
+        
+        public int getRowCount() {
+            return rows;
+        }
+        
+        public int getColumnCount() {
+            return cols;
+        }
+        
+        public String getColumnName(int col) {
+            return String.valueOf(col);
+        }
         
-        public SparseElement(int r, int c, double v) {
-            row = r;
-            col = c; 
-            value = v;
+        public Class<?> getColumnClass(int col) {
+            return Double.class;
         }
         
-        public String toString() {
-            return String.format("(%d, %d) = %.1f", row, col, value);
+        public Object getValueAt(int row, int col) {
+            return getDouble(row, col);
         }
     }
     
-    class SparseMatrix {
-        ArrayList<SparseElement> elements;
-        int rows, cols;
+    // One row per (operation, kernel) series of OperationMetrics, reloaded
+    // after every operation
+    static class MetricsTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
         
-        public SparseMatrix(int r, int c) {
-            rows = r;
-            cols = c;
-            elements = new ArrayList<SparseElement>();
+        private static final String[] COLUMNS = {
+            "Operation", "Kernel", "Runs", "p50 ms", "p90 ms", "p99 ms", "Max ms",
+            "Alloc MB", "nnz in", "nnz out"
+        };
+        private List<OperationMetrics.Summary> rows = new ArrayList<OperationMetrics.Summary>();
+        
+        void refresh() {
+            rows = OperationMetrics.GLOBAL.summaries();
+            fireTableDataChanged();
+        }
+        
+        public int getRowCount() {
+            return rows.size();
+        }
+        
+        public int getColumnCount() {
+            return COLUMNS.length;
         }
         
-        public void addElement(int row, int col, double value) {
-            if (value != 0.0) {
-                elements.add(new SparseElement(row, col, value));
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+        
+        public Object getValueAt(int row, int column) {
+            OperationMetrics.Summary s = rows.get(row);
+            switch (column) {
+                case 0: return s.operation;
+                case 1: return s.kernel;
+                case 2: return s.count;
+                case 3: return millis(s.p50Nanos);
+                case 4: return millis(s.p90Nanos);
+                case 5: return millis(s.p99Nanos);
+                case 6: return millis(s.maxNanos);
+                case 7: return s.meanAllocatedBytes < 0 ? "n/a"
+                        : String.format(Locale.ROOT, "%.1f", s.meanAllocatedBytes / (1024.0 * 1024.0));
+                case 8: return s.lastNnzIn;
+                default: return s.lastNnzOut < 0 ? "" : String.valueOf(s.lastNnzOut);
             }
         }
         
-        public double[][] toDenseMatrix() {
-            double[][] dense = new double[rows][cols];
-            for (SparseElement elem : elements) {
-                dense[elem.row][elem.col] = elem.value;
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+        }
+    }
+    
+    // Renderer that pulls primitive values straight from MatrixTableModel.
+    // Colors are shared constants and integral values up to CACHED_LABELS
+    // use preformatted strings, so painting a cell allocates nothing.
+    static class MatrixCellRenderer extends DefaultTableCellRenderer {
+        private static final long serialVersionUID = 1L;
+        
+        private static final Color NONZERO_BACKGROUND = new Color(255, 255, 200); // Light yellow
+        private static final int CACHED_LABELS = 1024;
+        private static final String[] LABELS = new String[2 * CACHED_LABELS + 1];
+        static {
+            for (int v = -CACHED_LABELS; v <= CACHED_LABELS; v++) {
+                LABELS[v + CACHED_LABELS] = String.valueOf(v);
             }
-            return dense;
         }
         
-        public int getNonZeroCount() {
-            return elements.size();
+        public MatrixCellRenderer() {
+            setHorizontalAlignment(JLabel.CENTER);
+        }
+        
+        public Component getTableCellRendererComponent(JTable table, Object value,
+                boolean isSelected, boolean hasFocus, int row, int column) {
+            MatrixTableModel model = (MatrixTableModel) table.getModel();
+            double val = model.getDouble(table.convertRowIndexToModel(row),
+                    table.convertColumnIndexToModel(column));
+            
+            setFont(table.getFont());
+            setBorder(noFocusBorder);
+            
+            if (val == 0.0) {
+                setText("0");
+                setBackground(Color.WHITE);
+                setForeground(Color.LIGHT_GRAY);
+            } else {
+                setText(formatValue(val));
+                setBackground(NONZERO_BACKGROUND);
+                setForeground(Color.BLUE);
+            }
+            
+            if (isSelected) {
+                setBackground(Color.BLUE);
+                setForeground(Color.WHITE);
+            }
+            
+            return this;
         }
         
-        public double getSparsity() {
-            int total = rows * cols;
-            return (1.0 - (double)elements.size() / total) * 100.0;
+        private static String formatValue(double val) {
+            double rounded = Math.rint(val);
+            if (Math.abs(rounded) <= CACHED_LABELS) {
+                return LABELS[(int) rounded + CACHED_LABELS];
+            }
+            return String.format("%.0f", val);
         }
     }
     
@@ -109,17 +253,43 @@ public class SparseMatrixComplete extends JFrame {
         densityField = new JTextField("0.1", 8);
         inputPanel.add(densityField);
         
+        inputPanel.add(new JLabel("Seed:"));
+        seedField = new JTextField("", 8);
+        inputPanel.add(seedField);
+        
+        inputPanel.add(new JLabel("Threads:"));
+        threadsField = new JTextField(String.valueOf(Runtime.getRuntime().availableProcessors()), 4);
+        inputPanel.add(threadsField);
+        
+        inputPanel.add(new JLabel("Kernels:"));
+        kernelBox = new JComboBox<String>(new String[] { "Scalar", "SIMD" });
+        if (MatrixKernels.SIMD_KERNELS == null) {
+            kernelBox.setToolTipText("jdk.incubator.vector is not available; SIMD runs the scalar kernels");
+        }
+        inputPanel.add(kernelBox);
+        
         // Buttons
-        JPanel buttonPanel = new JPanel(new GridLayout(2, 4, 5, 5));
+        JPanel buttonPanel = new JPanel(new GridLayout(4, 5, 5, 5));
         
         JButton btn1 = new JButton("Generate Matrix 1");
         JButton btn2 = new JButton("Generate Matrix 2");
         JButton btnAdd = new JButton("Add Matrices");
         JButton btnSubtract = new JButton("Subtract Matrices");
         JButton btnMultiplyTraditional = new JButton("Multiply (Traditional)");
+        JButton btnAddSparse = new JButton("Add (Sparse)");
+        JButton btnSubtractSparse = new JButton("Subtract (Sparse)");
         JButton btnMultiplySparse = new JButton("Multiply (Sparse)");
         JButton btnTransposeSparse = new JButton("Transpose (Sparse)");
         JButton btnTransposeOriginal = new JButton("Transpose (Original)");
+        JButton btnAddAuto = new JButton("Add (Auto)");
+        JButton btnSubtractAuto = new JButton("Subtract (Auto)");
+        JButton btnMultiplyAuto = new JButton("Multiply (Auto)");
+        JButton btnTransposeAuto = new JButton("Transpose (Auto)");
+        JButton btnLoad1 = new JButton("Load Matrix 1...");
+        JButton btnLoad2 = new JButton("Load Matrix 2...");
+        JButton btnSave1 = new JButton("Save Matrix 1...");
+        JButton btnSave2 = new JButton("Save Matrix 2...");
+        JButton btnSaveResult = new JButton("Save Result...");
         
         // Add action listeners
         btn1.addActionListener(new ActionListener() {
@@ -137,6 +307,12 @@ public class SparseMatrixComplete extends JFrame {
         btnMultiplyTraditional.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) { multiplyTraditional(); }
         });
+        btnAddSparse.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { addSparse(); }
+        });
+        btnSubtractSparse.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { subtractSparse(); }
+        });
         btnMultiplySparse.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) { multiplySparse(); }
         });
@@ -146,15 +322,61 @@ public class SparseMatrixComplete extends JFrame {
         btnTransposeOriginal.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) { transposeOriginal(); }
         });
+        btnAddAuto.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { runPlanned(ExecutionPlanner.Operation.ADD, "Addition"); }
+        });
+        btnSubtractAuto.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { runPlanned(ExecutionPlanner.Operation.SUBTRACT, "Subtraction"); }
+        });
+        btnMultiplyAuto.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { runPlanned(ExecutionPlanner.Operation.MULTIPLY, "Multiplication"); }
+        });
+        btnTransposeAuto.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { runPlanned(ExecutionPlanner.Operation.TRANSPOSE, "Transpose"); }
+        });
+        btnLoad1.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { loadMatrix(1); }
+        });
+        btnLoad2.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { loadMatrix(2); }
+        });
+        btnSave1.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { saveMatrix(sparseMatrix1, "Matrix 1"); }
+        });
+        btnSave2.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { saveMatrix(sparseMatrix2, "Matrix 2"); }
+        });
+        btnSaveResult.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                saveMatrix(sparseResultMatrix != null || resultMatrix == null
+                        ? sparseResultMatrix : SparseMatrix.fromDense(resultMatrix), "Result");
+            }
+        });
         
         buttonPanel.add(btn1);
         buttonPanel.add(btn2);
         buttonPanel.add(btnAdd);
         buttonPanel.add(btnSubtract);
         buttonPanel.add(btnMultiplyTraditional);
+        buttonPanel.add(btnAddSparse);
+        buttonPanel.add(btnSubtractSparse);
         buttonPanel.add(btnMultiplySparse);
         buttonPanel.add(btnTransposeSparse);
         buttonPanel.add(btnTransposeOriginal);
+        buttonPanel.add(btnAddAuto);
+        buttonPanel.add(btnSubtractAuto);
+        buttonPanel.add(btnMultiplyAuto);
+        buttonPanel.add(btnTransposeAuto);
+        buttonPanel.add(btnLoad1);
+        buttonPanel.add(btnLoad2);
+        buttonPanel.add(btnSave1);
+        buttonPanel.add(btnSave2);
+        buttonPanel.add(btnSaveResult);
+        
+        operationButtons.addAll(Arrays.asList(btn1, btn2, btnAdd, btnSubtract, btnMultiplyTraditional,
+                btnAddSparse, btnSubtractSparse, btnMultiplySparse, btnTransposeSparse, btnTransposeOriginal,
+                btnAddAuto, btnSubtractAuto, btnMultiplyAuto, btnTransposeAuto,
+                btnLoad1, btnLoad2, btnSave1, btnSave2, btnSaveResult));
         
         panel.add(inputPanel, BorderLayout.NORTH);
         panel.add(buttonPanel, BorderLayout.CENTER);
@@ -166,9 +388,9 @@ public class SparseMatrixComplete extends JFrame {
         JPanel panel = new JPanel(new GridLayout(2, 2, 5, 5));
         
         // Initialize table models
-        model1 = new DefaultTableModel();
-        model2 = new DefaultTableModel();
-        modelResult = new DefaultTableModel();
+        model1 = new MatrixTableModel();
+        model2 = new MatrixTableModel();
+        modelResult = new MatrixTableModel();
         
         // Create tables
         matrix1Table = createStyledTable(model1);
@@ -193,55 +415,75 @@ public class SparseMatrixComplete extends JFrame {
         sparseInfoArea.setEditable(false);
         sparseInfoArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
         JScrollPane sparseScroll = new JScrollPane(sparseInfoArea);
-        sparseScroll.setBorder(BorderFactory.createTitledBorder("Sparse Matrix Elements"));
-        sparseScroll.setPreferredSize(new Dimension(300, 250));
+        
+        // Sparse elements and the run history share the fourth cell
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.setPreferredSize(new Dimension(300, 250));
+        tabs.addTab("Sparse Matrix Elements", sparseScroll);
+        tabs.addTab("Metrics", createMetricsPanel());
         
         panel.add(scroll1);
         panel.add(scroll2);
         panel.add(scrollResult);
-        panel.add(sparseScroll);
+        panel.add(tabs);
         
         return panel;
     }
     
-    private JTable createStyledTable(DefaultTableModel model) {
-        JTable table = new JTable(model);
+    private JPanel createMetricsPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        metricsModel = new MetricsTableModel();
+        JTable table = new JTable(metricsModel);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton reset = new JButton("Reset");
+        reset.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                OperationMetrics.GLOBAL.reset();
+                metricsModel.refresh();
+            }
+        });
+        JButton save = new JButton("Save Metrics...");
+        save.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { saveMetrics(); }
+        });
+        buttons.add(reset);
+        buttons.add(save);
+        panel.add(buttons, BorderLayout.SOUTH);
+        return panel;
+    }
+    
+    // Writes the same JSON as MatrixBenchmark --metrics; small enough to
+    // write on the EDT
+    private void saveMetrics() {
+        File file = chooseFile(true);
+        if (file == null) return;
+        try {
+            OperationMetrics.GLOBAL.writeJson(file.toPath());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Cannot save metrics: " + e.getMessage() + "!");
+        }
+    }
+    
+    private JTable createStyledTable(final MatrixTableModel model) {
+        final JTable table = new JTable(model);
         table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
         table.setRowHeight(20);
         table.setShowGrid(true);
         table.setGridColor(Color.LIGHT_GRAY);
         
         // Custom cell renderer
-        table.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
-            public Component getTableCellRendererComponent(JTable table, Object value,
-                    boolean isSelected, boolean hasFocus, int row, int column) {
-                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-                
-                setHorizontalAlignment(JLabel.CENTER);
-                
-                if (value != null) {
-                    double val = Double.parseDouble(value.toString());
-                    if (val == 0.0) {
-                        setText("0");
-                        setBackground(Color.WHITE);
-                        setForeground(Color.LIGHT_GRAY);
-                    } else {
-                        setText(String.format("%.0f", val));
-                        setBackground(new Color(255, 255, 200)); // Light yellow
-                        setForeground(Color.BLUE);
-                    }
-                } else {
-                    setText("0");
-                    setBackground(Color.WHITE);
-                    setForeground(Color.LIGHT_GRAY);
-                }
-                
-                if (isSelected) {
-                    setBackground(Color.BLUE);
-                    setForeground(Color.WHITE);
-                }
-                
-                return this;
+        table.setDefaultRenderer(Object.class, new MatrixCellRenderer());
+        table.setDefaultRenderer(Double.class, table.getDefaultRenderer(Object.class));
+        
+        // Wide matrices scroll horizontally instead of squeezing every column
+        model.addTableModelListener(new TableModelListener() {
+            public void tableChanged(TableModelEvent e) {
+                table.setAutoResizeMode(model.getColumnCount() > 50
+                        ? JTable.AUTO_RESIZE_OFF : JTable.AUTO_RESIZE_SUBSEQUENT_COLUMNS);
             }
         });
         
@@ -253,32 +495,60 @@ public class SparseMatrixComplete extends JFrame {
         timeLabel = new JLabel("Execution Time: 0 ns");
         timeLabel.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 12));
         panel.add(timeLabel);
+        
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        panel.add(progressBar);
+        
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { cancelOperation(); }
+        });
+        panel.add(cancelButton);
+        
+        // Poll the running kernel's row counter rather than pushing updates
+        // from the worker threads
+        progressTimer = new Timer(100, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (currentWorker != null) {
+                    progressBar.setValue(currentWorker.progress.getPercent());
+                }
+            }
+        });
         return panel;
     }
     
     // Matrix generation
     private void generateMatrix1() {
         try {
-            int size = Integer.parseInt(sizeField.getText().trim());
-            double density = Double.parseDouble(densityField.getText().trim());
-            
-            if (size <= 0 || size > 1000) {
-                JOptionPane.showMessageDialog(this, "Matrix size must be between 1 and 1000!");
-                return;
-            }
-            
-            if (density < 0 || density > 1) {
-                JOptionPane.showMessageDialog(this, "Density must be between 0 and 1!");
-                return;
-            }
+            final int size = Integer.parseInt(sizeField.getText().trim());
+            final double density = Double.parseDouble(densityField.getText().trim());
+            final long seed = readSeed();
             
-            matrix1 = generateRandomMatrix(size, density);
-            sparseMatrix1 = convertToSparse(matrix1);
-            displayMatrix(matrix1, model1);
-            updateSparseInfo();
+            if (!checkGeneratorInput(size, density)) return;
             
-            timeLabel.setText("Matrix 1 generated successfully");
+            int threads = readThreadCount();
+            if (threads <= 0) return;
             
+            final ForkJoinPool pool = getKernelPool(threads);
+            runOperation(new OperationWorker<SparseMatrix>("Matrix 1 generation", "generate", "sparse") {
+                protected SparseMatrix compute(OperationProgress progress) {
+                    return MatrixGenerator.generateSparseMatrix(size, density, seed, pool, progress);
+                }
+                
+                protected void finish(SparseMatrix result) {
+                    sparseMatrix1 = result;
+                    matrix1 = size <= MAX_DENSE_SIZE ? result.toDense() : null;
+                    displayMatrix(sparseMatrix1, model1);
+                    updateSparseInfo();
+                }
+                
+                protected String describe(long elapsedNanos) {
+                    return "Matrix 1 generated successfully (seed " + seed + ")";
+                }
+            });
+        
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Please enter valid numbers!");
         }
@@ -286,77 +556,159 @@ public class SparseMatrixComplete extends JFrame {
     
     private void generateMatrix2() {
         try {
-            int size = Integer.parseInt(sizeField.getText().trim());
-            double density = Double.parseDouble(densityField.getText().trim());
-            
-            if (size <= 0 || size > 1000) {
-                JOptionPane.showMessageDialog(this, "Matrix size must be between 1 and 1000!");
-                return;
-            }
-            
-            if (density < 0 || density > 1) {
-                JOptionPane.showMessageDialog(this, "Density must be between 0 and 1!");
-                return;
-            }
+            final int size = Integer.parseInt(sizeField.getText().trim());
+            final double density = Double.parseDouble(densityField.getText().trim());
+            final long seed = readSeed();
             
-            matrix2 = generateRandomMatrix(size, density);
-            sparseMatrix2 = convertToSparse(matrix2);
-            displayMatrix(matrix2, model2);
-            updateSparseInfo();
+            if (!checkGeneratorInput(size, density)) return;
             
-            timeLabel.setText("Matrix 2 generated successfully");
+            int threads = readThreadCount();
+            if (threads <= 0) return;
             
+            final ForkJoinPool pool = getKernelPool(threads);
+            runOperation(new OperationWorker<SparseMatrix>("Matrix 2 generation", "generate", "sparse") {
+                protected SparseMatrix compute(OperationProgress progress) {
+                    return MatrixGenerator.generateSparseMatrix(size, density, seed, pool, progress);
+                }
+                
+                protected void finish(SparseMatrix result) {
+                    sparseMatrix2 = result;
+                    matrix2 = size <= MAX_DENSE_SIZE ? result.toDense() : null;
+                    displayMatrix(sparseMatrix2, model2);
+                    updateSparseInfo();
+                }
+                
+                protected String describe(long elapsedNanos) {
+                    return "Matrix 2 generated successfully (seed " + seed + ")";
+                }
+            });
+        
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Please enter valid numbers!");
         }
     }
     
-    private double[][] generateRandomMatrix(int size, double density) {
-        double[][] matrix = new double[size][size];
-        Random random = new Random();
+    // Matrix files: Matrix Market for *.mtx, the binary format of
+    // SparseMatrixIO for anything else
+    private void loadMatrix(final int which) {
+        final File file = chooseFile(false);
+        if (file == null) return;
         
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (random.nextDouble() < density) {
-                    matrix[i][j] = random.nextInt(9) + 1; // Values 1-9
+        runOperation(new OperationWorker<SparseMatrix>("Matrix " + which + " load", "load", fileFormat(file)) {
+            protected SparseMatrix compute(OperationProgress progress) {
+                try {
+                    return SparseMatrixIO.readFile(file.toPath());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
-        }
-        return matrix;
+            
+            protected void finish(SparseMatrix result) {
+                DenseMatrix dense = result.rows <= MAX_DENSE_SIZE && result.cols <= MAX_DENSE_SIZE
+                        ? result.toDense() : null;
+                if (which == 1) {
+                    sparseMatrix1 = result;
+                    matrix1 = dense;
+                    displayMatrix(result, model1);
+                } else {
+                    sparseMatrix2 = result;
+                    matrix2 = dense;
+                    displayMatrix(result, model2);
+                }
+                updateSparseInfo();
+            }
+            
+            protected String describe(long elapsedNanos) {
+                return "Matrix " + which + " loaded from " + file.getName() + " in " + elapsedNanos + " ns";
+            }
+        });
     }
     
-    private SparseMatrix convertToSparse(double[][] matrix) {
-        SparseMatrix sparse = new SparseMatrix(matrix.length, matrix[0].length);
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = 0; j < matrix[0].length; j++) {
-                if (matrix[i][j] != 0) {
-                    sparse.addElement(i, j, matrix[i][j]);
+    private void saveMatrix(final SparseMatrix matrix, final String name) {
+        if (matrix == null) {
+            JOptionPane.showMessageDialog(this, name + " does not exist yet!");
+            return;
+        }
+        final File file = chooseFile(true);
+        if (file == null) return;
+        
+        runOperation(new OperationWorker<File>(name + " save", "save", fileFormat(file), matrix) {
+            protected File compute(OperationProgress progress) {
+                try {
+                    SparseMatrixIO.writeFile(matrix, file.toPath());
+                    return file;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
-        }
-        return sparse;
+            
+            protected void finish(File result) {
+            }
+            
+            protected String describe(long elapsedNanos) {
+                return name + " saved to " + file.getName() + " in " + elapsedNanos + " ns";
+            }
+        });
     }
     
-    private void displayMatrix(double[][] matrix, DefaultTableModel model) {
-        // Clear existing data
-        model.setRowCount(0);
-        model.setColumnCount(0);
-        
-        if (matrix == null || matrix.length == 0) return;
+    private static String fileFormat(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(".mtx") ? "matrix-market" : "binary";
+    }
+    
+    private File chooseFile(boolean save) {
+        JFileChooser chooser = new JFileChooser(lastDirectory);
+        int choice = save ? chooser.showSaveDialog(this) : chooser.showOpenDialog(this);
+        if (choice != JFileChooser.APPROVE_OPTION) return null;
+        lastDirectory = chooser.getCurrentDirectory();
+        return chooser.getSelectedFile();
+    }
+    
+    private boolean checkGeneratorInput(int size, double density) {
+        if (size <= 0) {
+            JOptionPane.showMessageDialog(this, "Matrix size must be at least 1!");
+            return false;
+        }
         
-        // Add columns
-        for (int j = 0; j < matrix[0].length; j++) {
-            model.addColumn(String.valueOf(j));
+        if (density < 0 || density > 1) {
+            JOptionPane.showMessageDialog(this, "Density must be between 0 and 1!");
+            return false;
         }
         
-        // Add rows
-        for (int i = 0; i < matrix.length; i++) {
-            Object[] row = new Object[matrix[0].length];
-            for (int j = 0; j < matrix[0].length; j++) {
-                row[j] = matrix[i][j];
-            }
-            model.addRow(row);
+        if ((double) size * size * density > MatrixGenerator.MAX_NONZEROS) {
+            JOptionPane.showMessageDialog(this, "Too many non-zero elements for this size and density!");
+            return false;
         }
+        return true;
+    }
+    
+    // Empty seed field means a fresh random seed
+    private long readSeed() {
+        String text = seedField.getText().trim();
+        if (text.isEmpty()) {
+            return new SplittableRandom().nextLong();
+        }
+        return Long.parseLong(text);
+    }
+    
+    private void displayMatrix(DenseMatrix matrix, MatrixTableModel model) {
+        model.setMatrix(matrix);
+    }
+    
+    private void displayMatrix(SparseMatrix matrix, MatrixTableModel model) {
+        model.setMatrix(matrix);
+    }
+    
+    private void displayDenseResult(DenseMatrix result) {
+        resultMatrix = result;
+        sparseResultMatrix = null;
+        displayMatrix(result, modelResult);
+    }
+    
+    // Sparse results are shown straight from their compressed storage
+    private void displaySparseResult(SparseMatrix result) {
+        resultMatrix = null;
+        sparseResultMatrix = result;
+        displayMatrix(result, modelResult);
     }
     
     private void updateSparseInfo() {
@@ -368,9 +720,9 @@ public class SparseMatrixComplete extends JFrame {
             info.append("Non-zero elements: ").append(sparseMatrix1.getNonZeroCount()).append("\n");
             info.append("Sparsity: ").append(String.format("%.2f%%", sparseMatrix1.getSparsity())).append("\n");
             
-            if (sparseMatrix1.elements.size() <= 50) {
+            if (sparseMatrix1.getNonZeroCount() <= 50) {
                 info.append("Elements:\n");
-                for (SparseElement elem : sparseMatrix1.elements) {
+                for (SparseElement elem : sparseMatrix1.toCoordinates()) {
                     info.append(elem.toString()).append("\n");
                 }
             } else {
@@ -385,9 +737,9 @@ public class SparseMatrixComplete extends JFrame {
             info.append("Non-zero elements: ").append(sparseMatrix2.getNonZeroCount()).append("\n");
             info.append("Sparsity: ").append(String.format("%.2f%%", sparseMatrix2.getSparsity())).append("\n");
             
-            if (sparseMatrix2.elements.size() <= 50) {
+            if (sparseMatrix2.getNonZeroCount() <= 50) {
                 info.append("Elements:\n");
-                for (SparseElement elem : sparseMatrix2.elements) {
+                for (SparseElement elem : sparseMatrix2.toCoordinates()) {
                     info.append(elem.toString()).append("\n");
                 }
             } else {
@@ -399,50 +751,125 @@ public class SparseMatrixComplete extends JFrame {
         sparseInfoArea.setCaretPosition(0);
     }
     
-    // Matrix operations
+    // Matrix operations. Inputs are captured on the EDT, the kernel runs on
+    // an OperationWorker, and the result reaches the tables only on success.
     private void addMatrices() {
         if (!checkMatricesExist()) return;
         
-        long startTime = System.nanoTime();
-        resultMatrix = performAddition(matrix1, matrix2);
-        long endTime = System.nanoTime();
+        int threads = readThreadCount();
+        if (threads <= 0) return;
         
-        displayMatrix(resultMatrix, modelResult);
-        timeLabel.setText("Matrix Addition Execution Time: " + (endTime - startTime) + " ns");
+        final DenseMatrix a = matrix1, b = matrix2;
+        final ForkJoinPool pool = getKernelPool(threads);
+        final DenseKernels kernels = getDenseKernels();
+        runOperation(new OperationWorker<DenseMatrix>("Matrix Addition (" + threads + " threads, "
+                + kernels.getName() + ")", "add", kernels.getName(), a, b) {
+            protected DenseMatrix compute(OperationProgress progress) {
+                return MatrixKernels.performAddition(a, b, pool, kernels, progress);
+            }
+            
+            protected void finish(DenseMatrix result) {
+                displayDenseResult(result);
+            }
+        });
     }
     
     private void subtractMatrices() {
         if (!checkMatricesExist()) return;
         
-        long startTime = System.nanoTime();
-        resultMatrix = performSubtraction(matrix1, matrix2);
-        long endTime = System.nanoTime();
+        int threads = readThreadCount();
+        if (threads <= 0) return;
         
-        displayMatrix(resultMatrix, modelResult);
-        timeLabel.setText("Matrix Subtraction Execution Time: " + (endTime - startTime) + " ns");
+        final DenseMatrix a = matrix1, b = matrix2;
+        final ForkJoinPool pool = getKernelPool(threads);
+        final DenseKernels kernels = getDenseKernels();
+        runOperation(new OperationWorker<DenseMatrix>("Matrix Subtraction (" + threads + " threads, "
+                + kernels.getName() + ")", "subtract", kernels.getName(), a, b) {
+            protected DenseMatrix compute(OperationProgress progress) {
+                return MatrixKernels.performSubtraction(a, b, pool, kernels, progress);
+            }
+            
+            protected void finish(DenseMatrix result) {
+                displayDenseResult(result);
+            }
+        });
     }
     
     private void multiplyTraditional() {
         if (!checkMatricesExist()) return;
         
-        long startTime = System.nanoTime();
-        resultMatrix = performTraditionalMultiplication(matrix1, matrix2);
-        long endTime = System.nanoTime();
+        int threads = readThreadCount();
+        if (threads <= 0) return;
+        
+        final DenseMatrix a = matrix1, b = matrix2;
+        final ForkJoinPool pool = getKernelPool(threads);
+        final DenseKernels kernels = getDenseKernels();
+        runOperation(new OperationWorker<DenseMatrix>("Traditional Multiplication (" + threads + " threads, "
+                + kernels.getName() + ")", "multiply", kernels.getName(), a, b) {
+            protected DenseMatrix compute(OperationProgress progress) {
+                return MatrixKernels.performTraditionalMultiplication(a, b, pool, kernels, progress);
+            }
+            
+            protected void finish(DenseMatrix result) {
+                displayDenseResult(result);
+            }
+        });
+    }
+    
+    private void addSparse() {
+        if (!checkSparseMatricesSameSize()) return;
+        
+        final SparseMatrix a = sparseMatrix1, b = sparseMatrix2;
+        runOperation(new OperationWorker<SparseMatrix>("Sparse Addition", "add", "sparse", a, b) {
+            protected SparseMatrix compute(OperationProgress progress) {
+                return MatrixKernels.performSparseAddition(a, b, progress);
+            }
+            
+            protected void finish(SparseMatrix result) {
+                displaySparseResult(result);
+            }
+        });
+    }
+    
+    private void subtractSparse() {
+        if (!checkSparseMatricesSameSize()) return;
         
-        displayMatrix(resultMatrix, modelResult);
-        timeLabel.setText("Traditional Multiplication Execution Time: " + (endTime - startTime) + " ns");
+        final SparseMatrix a = sparseMatrix1, b = sparseMatrix2;
+        runOperation(new OperationWorker<SparseMatrix>("Sparse Subtraction", "subtract", "sparse", a, b) {
+            protected SparseMatrix compute(OperationProgress progress) {
+                return MatrixKernels.performSparseSubtraction(a, b, progress);
+            }
+            
+            protected void finish(SparseMatrix result) {
+                displaySparseResult(result);
+            }
+        });
     }
     
     private void multiplySparse() {
         if (!checkSparseMatricesExist()) return;
+        if (sparseMatrix1.cols != sparseMatrix2.rows) {
+            JOptionPane.showMessageDialog(this, "Matrices must have compatible dimensions!");
+            return;
+        }
         
-        long startTime = System.nanoTime();
-        SparseMatrix result = performSparseMultiplication(sparseMatrix1, sparseMatrix2);
-        resultMatrix = result.toDenseMatrix();
-        long endTime = System.nanoTime();
+        final int threads = readThreadCount();
+        if (threads <= 0) return;
         
-        displayMatrix(resultMatrix, modelResult);
-        timeLabel.setText("Sparse Multiplication Execution Time: " + (endTime - startTime) + " ns");
+        final SparseMatrix a = sparseMatrix1, b = sparseMatrix2;
+        final ForkJoinPool pool = getKernelPool(threads);
+        runOperation(new OperationWorker<SparseMatrix>("Sparse Multiplication (" + threads + " threads)",
+                "multiply", sparseKernelName(threads), a, b) {
+            protected SparseMatrix compute(OperationProgress progress) {
+                return threads == 1
+                        ? MatrixKernels.performSparseMultiplication(a, b, progress)
+                        : MatrixKernels.performParallelSparseMultiplication(a, b, pool, progress);
+            }
+            
+            protected void finish(SparseMatrix result) {
+                displaySparseResult(result);
+            }
+        });
     }
     
     private void transposeSparse() {
@@ -451,36 +878,258 @@ public class SparseMatrixComplete extends JFrame {
             return;
         }
         
-        long startTime = System.nanoTime();
-        SparseMatrix transposed = performSparseTranspose(sparseMatrix2);
-        resultMatrix = transposed.toDenseMatrix();
-        long endTime = System.nanoTime();
+        final int threads = readThreadCount();
+        if (threads <= 0) return;
         
-        displayMatrix(resultMatrix, modelResult);
-        timeLabel.setText("Sparse Transpose Execution Time: " + (endTime - startTime) + " ns");
+        final SparseMatrix matrix = sparseMatrix2;
+        final ForkJoinPool pool = getKernelPool(threads);
+        runOperation(new OperationWorker<SparseMatrix>("Sparse Transpose (" + threads + " threads)",
+                "transpose", sparseKernelName(threads), matrix) {
+            protected SparseMatrix compute(OperationProgress progress) {
+                return threads == 1
+                        ? MatrixKernels.performSparseTranspose(matrix, progress)
+                        : MatrixKernels.performParallelSparseTranspose(matrix, pool, progress);
+            }
+            
+            protected void finish(SparseMatrix result) {
+                displaySparseResult(result);
+            }
+        });
     }
     
     private void transposeOriginal() {
         if (matrix2 == null) {
-            JOptionPane.showMessageDialog(this, "Please generate Matrix 2 first!");
+            JOptionPane.showMessageDialog(this, sparseMatrix2 == null
+                    ? "Please generate Matrix 2 first!"
+                    : "Matrix 2 is too large for dense operations; use the sparse version!");
             return;
         }
         
-        long startTime = System.nanoTime();
-        resultMatrix = performTraditionalTranspose(matrix2);
-        long endTime = System.nanoTime();
+        int threads = readThreadCount();
+        if (threads <= 0) return;
         
-        displayMatrix(resultMatrix, modelResult);
-        timeLabel.setText("Traditional Transpose Execution Time: " + (endTime - startTime) + " ns");
+        final DenseMatrix matrix = matrix2;
+        final ForkJoinPool pool = getKernelPool(threads);
+        runOperation(new OperationWorker<DenseMatrix>("Traditional Transpose (" + threads + " threads)",
+                "transpose", "dense", matrix) {
+            protected DenseMatrix compute(OperationProgress progress) {
+                return MatrixKernels.performTraditionalTranspose(matrix, pool, progress);
+            }
+            
+            protected void finish(DenseMatrix result) {
+                displayDenseResult(result);
+            }
+        });
+    }
+    
+    // Planner-driven operations. The kernel and output format are chosen by
+    // ExecutionPlanner from the current inputs; transpose uses Matrix 2 like
+    // the other transpose buttons.
+    private void runPlanned(final ExecutionPlanner.Operation op, String title) {
+        if (op == ExecutionPlanner.Operation.TRANSPOSE) {
+            if (sparseMatrix2 == null) {
+                JOptionPane.showMessageDialog(this, "Please generate Matrix 2 first!");
+                return;
+            }
+        } else if (op == ExecutionPlanner.Operation.MULTIPLY) {
+            if (!checkSparseMatricesExist()) return;
+            if (sparseMatrix1.cols != sparseMatrix2.rows) {
+                JOptionPane.showMessageDialog(this, "Matrices must have compatible dimensions!");
+                return;
+            }
+        } else if (!checkSparseMatricesSameSize()) {
+            return;
+        }
+        
+        int threads = readThreadCount();
+        if (threads <= 0) return;
+        
+        final MatrixOperand a = op == ExecutionPlanner.Operation.TRANSPOSE
+                ? new MatrixOperand(sparseMatrix2, matrix2)
+                : new MatrixOperand(sparseMatrix1, matrix1);
+        final MatrixOperand b = op == ExecutionPlanner.Operation.TRANSPOSE
+                ? null : new MatrixOperand(sparseMatrix2, matrix2);
+        final ForkJoinPool pool = getKernelPool(threads);
+        final DenseKernels kernels = getDenseKernels();
+        // Transpose has no second input, and only real inputs go into the
+        // cache key
+        Object[] inputs = b == null ? new Object[] { a } : new Object[] { a, b };
+        runOperation(new OperationWorker<MatrixOperand>("Planned " + title + " (" + threads + " threads)",
+                op.name().toLowerCase(Locale.ROOT), "auto", inputs) {
+            private ExecutionPlanner.Plan plan;
+            
+            protected MatrixOperand compute(OperationProgress progress) {
+                plan = ExecutionPlanner.plan(op, a, b);
+                return ExecutionPlanner.execute(plan, a, b, pool, kernels, progress);
+            }
+            
+            protected String kernelUsed() {
+                return "auto-" + plan.kernel.name().toLowerCase(Locale.ROOT);
+            }
+            
+            protected void finish(MatrixOperand result) {
+                if (result.hasDense()) {
+                    displayDenseResult(result.dense());
+                } else {
+                    displaySparseResult(result.sparse());
+                }
+            }
+            
+            protected String describe(long elapsedNanos) {
+                // No plan is made when the result comes from the cache
+                return plan == null ? super.describe(elapsedNanos)
+                        : super.describe(elapsedNanos) + " [" + plan.describe() + "]";
+            }
+        });
+    }
+    
+    // Background execution. One operation runs at a time; the operation
+    // buttons are disabled until it finishes or is cancelled.
+    abstract class OperationWorker<T> extends SwingWorker<T, Void> {
+        private final String label;
+        private final String operation, kernel;
+        private final long nnzIn;
+        private final ResultCache.Key cacheKey;
+        final OperationProgress progress = new OperationProgress();
+        private volatile long elapsedNanos;
+        private volatile boolean cacheHit;
+        
+        // Each completed run is recorded in OperationMetrics.GLOBAL under
+        // (operation, kernel), with the inputs' non-zeros counted here on
+        // the EDT. Operations in CACHED_OPERATIONS are looked up in the
+        // result cache by (operation, input versions) before computing.
+        OperationWorker(String label, String operation, String kernel, Object... inputs) {
+            this.label = label;
+            this.operation = operation;
+            this.kernel = kernel;
+            long nnz = 0;
+            for (Object input : inputs) {
+                nnz += Math.max(0, OperationMetrics.nonZeros(input));
+            }
+            this.nnzIn = nnz;
+            this.cacheKey = CACHED_OPERATIONS.contains(operation) ? ResultCache.key(operation, inputs) : null;
+        }
+        
+        // Runs off the EDT
+        protected abstract T compute(OperationProgress progress);
+        
+        // Runs on the EDT, only when compute() completed normally
+        protected abstract void finish(T result);
+        
+        protected String describe(long elapsedNanos) {
+            return label + " Execution Time: " + elapsedNanos + " ns";
+        }
+        
+        // Kernel to record when it is only known after compute(); null
+        // keeps the one given to the constructor
+        protected String kernelUsed() {
+            return null;
+        }
+        
+        protected T doInBackground() {
+            OperationMetrics.Sample sample = OperationMetrics.GLOBAL.start(operation, kernel, nnzIn);
+            MatrixOperand cached = cacheKey == null ? null : resultCache.get(cacheKey);
+            if (cached != null) {
+                cacheHit = true;
+                T result = fromCache(cached);
+                resultCache.update(cacheKey);
+                elapsedNanos = sample.finish(result, "cache");
+                return result;
+            }
+            T result = compute(progress);
+            elapsedNanos = sample.finish(result, kernelUsed());
+            if (cacheKey != null) {
+                resultCache.put(cacheKey, result instanceof MatrixOperand ? (MatrixOperand) result
+                        : result instanceof SparseMatrix ? new MatrixOperand((SparseMatrix) result)
+                        : new MatrixOperand((DenseMatrix) result));
+            }
+            return result;
+        }
+        
+        // The cached result in the form this worker's kernel produces
+        @SuppressWarnings("unchecked")
+        private T fromCache(MatrixOperand cached) {
+            if (kernel.equals("auto")) return (T) cached;
+            if (kernel.startsWith("sparse")) return (T) cached.sparse();
+            return (T) cached.dense();
+        }
+        
+        // Cooperative only: the kernel throws from its next rowsDone and
+        // doInBackground returns through it. done() therefore runs after the
+        // kernel has left the pool, and the buttons come back no earlier,
+        // where cancel(true) would run done() at once.
+        void cancelOperation() {
+            progress.cancel();
+        }
+        
+        protected void done() {
+            operationFinished(this);
+            if (progress.isCancelled()) {
+                timeLabel.setText(label + " cancelled");
+                return;
+            }
+            try {
+                T result = get();
+                finish(result);
+                String text = describe(elapsedNanos);
+                if (cacheKey != null) {
+                    text += (cacheHit ? " (cached)" : "") + " | " + resultCache.describe();
+                }
+                timeLabel.setText(text);
+                metricsModel.refresh();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                timeLabel.setText(label + " failed");
+                JOptionPane.showMessageDialog(SparseMatrixComplete.this, "Operation failed: " + cause);
+            }
+        }
+    }
+    
+    private void runOperation(OperationWorker<?> worker) {
+        currentWorker = worker;
+        for (JButton button : operationButtons) {
+            button.setEnabled(false);
+        }
+        cancelButton.setEnabled(true);
+        progressBar.setValue(0);
+        progressTimer.start();
+        timeLabel.setText("Running...");
+        worker.execute();
+    }
+    
+    private void operationFinished(OperationWorker<?> worker) {
+        if (currentWorker != worker) return;
+        currentWorker = null;
+        progressTimer.stop();
+        progressBar.setValue(worker.progress.isCancelled() ? 0 : 100);
+        cancelButton.setEnabled(false);
+        for (JButton button : operationButtons) {
+            button.setEnabled(true);
+        }
+    }
+    
+    private void cancelOperation() {
+        if (currentWorker != null) {
+            currentWorker.cancelOperation();
+            cancelButton.setEnabled(false);
+            timeLabel.setText("Cancelling...");
+        }
     }
     
     // Helper methods
     private boolean checkMatricesExist() {
-        if (matrix1 == null || matrix2 == null) {
+        if (sparseMatrix1 == null || sparseMatrix2 == null) {
             JOptionPane.showMessageDialog(this, "Please generate both matrices first!");
             return false;
         }
-        if (matrix1.length != matrix2.length || matrix1[0].length != matrix2[0].length) {
+        if (matrix1 == null || matrix2 == null) {
+            JOptionPane.showMessageDialog(this, "Matrices larger than " + MAX_DENSE_SIZE
+                    + " are kept sparse only; use the sparse operations!");
+            return false;
+        }
+        if (matrix1.rows != matrix2.rows || matrix1.cols != matrix2.cols) {
             JOptionPane.showMessageDialog(this, "Matrices must have the same dimensions!");
             return false;
         }
@@ -495,80 +1144,46 @@ public class SparseMatrixComplete extends JFrame {
         return true;
     }
     
-    // Matrix operation implementations
-    private double[][] performAddition(double[][] a, double[][] b) {
-        double[][] result = new double[a.length][a[0].length];
-        for (int i = 0; i < a.length; i++) {
-            for (int j = 0; j < a[0].length; j++) {
-                result[i][j] = a[i][j] + b[i][j];
-            }
-        }
-        return result;
-    }
-    
-    private double[][] performSubtraction(double[][] a, double[][] b) {
-        double[][] result = new double[a.length][a[0].length];
-        for (int i = 0; i < a.length; i++) {
-            for (int j = 0; j < a[0].length; j++) {
-                result[i][j] = a[i][j] - b[i][j];
-            }
+    private boolean checkSparseMatricesSameSize() {
+        if (!checkSparseMatricesExist()) return false;
+        if (sparseMatrix1.rows != sparseMatrix2.rows || sparseMatrix1.cols != sparseMatrix2.cols) {
+            JOptionPane.showMessageDialog(this, "Matrices must have the same dimensions!");
+            return false;
         }
-        return result;
+        return true;
     }
     
-    private double[][] performTraditionalMultiplication(double[][] a, double[][] b) {
-        double[][] result = new double[a.length][b[0].length];
-        for (int i = 0; i < a.length; i++) {
-            for (int j = 0; j < b[0].length; j++) {
-                for (int k = 0; k < a[0].length; k++) {
-                    result[i][j] += a[i][k] * b[k][j];
-                }
+    private int readThreadCount() {
+        try {
+            int threads = Integer.parseInt(threadsField.getText().trim());
+            if (threads <= 0 || threads > 1024) {
+                JOptionPane.showMessageDialog(this, "Threads must be between 1 and 1024!");
+                return -1;
             }
+            return threads;
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter valid numbers!");
+            return -1;
         }
-        return result;
     }
     
-    private SparseMatrix performSparseMultiplication(SparseMatrix a, SparseMatrix b) {
-        SparseMatrix result = new SparseMatrix(a.rows, b.cols);
-        double[][] temp = new double[a.rows][b.cols];
-        
-        // Perform sparse multiplication
-        for (SparseElement elemA : a.elements) {
-            for (SparseElement elemB : b.elements) {
-                if (elemA.col == elemB.row) {
-                    temp[elemA.row][elemB.col] += elemA.value * elemB.value;
-                }
-            }
-        }
-        
-        // Convert back to sparse
-        for (int i = 0; i < temp.length; i++) {
-            for (int j = 0; j < temp[0].length; j++) {
-                if (temp[i][j] != 0) {
-                    result.addElement(i, j, temp[i][j]);
-                }
-            }
+    private ForkJoinPool getKernelPool(int threads) {
+        if (kernelPool == null || kernelPool.getParallelism() != threads) {
+            if (kernelPool != null) kernelPool.shutdown();
+            kernelPool = new ForkJoinPool(threads);
         }
-        
-        return result;
+        return kernelPool;
     }
     
-    private double[][] performTraditionalTranspose(double[][] matrix) {
-        double[][] result = new double[matrix[0].length][matrix.length];
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = 0; j < matrix[0].length; j++) {
-                result[j][i] = matrix[i][j];
-            }
-        }
-        return result;
+    private static String sparseKernelName(int threads) {
+        return threads == 1 ? "sparse" : "sparse x" + threads;
     }
     
-    private SparseMatrix performSparseTranspose(SparseMatrix matrix) {
-        SparseMatrix result = new SparseMatrix(matrix.cols, matrix.rows);
-        for (SparseElement elem : matrix.elements) {
-            result.addElement(elem.col, elem.row, elem.value);
+    private DenseKernels getDenseKernels() {
+        if ("SIMD".equals(kernelBox.getSelectedItem()) && MatrixKernels.SIMD_KERNELS != null) {
+            return MatrixKernels.SIMD_KERNELS;
         }
-        return result;
+        return MatrixKernels.SCALAR_KERNELS;
     }
     
     // Main method
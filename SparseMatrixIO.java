@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+// Binary on-disk form of a CSR matrix. Little-endian layout:
+//
+//   offset  0  magic "SPMX", format version (int)
+//           8  rows (int), cols (int)
+//          16  nnz (long)
+//          24  offsets of the rowPtr, colIdx and values sections (3 longs)
+//          48  reserved up to HEADER_BYTES
+//
+// followed by rowPtr (rows + 1 ints), colIdx (nnz ints) and values
+// (nnz doubles), each section starting on an 8-byte boundary. The
+// sections are the CSR arrays verbatim, so map() can serve them straight
+// from the page cache and load() is a bulk copy with no parsing.
+public class SparseMatrixIO {
+    
+    static final int MAGIC = 0x584d5053; // "SPMX" read little-endian
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    
+    // A single mapping is limited to 2 GB, so sections are mapped in
+    // segments of 2^SEGMENT_SHIFT elements
+    static final int SEGMENT_SHIFT = 27;
+    static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    
+    public static void save(SparseMatrix matrix, Path path) throws IOException {
+        long nnz = matrix.getNonZeroCount();
+        long rowPtrOffset = HEADER_BYTES;
+        long colIdxOffset = align(rowPtrOffset + 4L * (matrix.rows + 1));
+        long valuesOffset = align(colIdxOffset + 4L * nnz);
+        
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(matrix.rows).putInt(matrix.cols).putLong(nnz);
+            header.putLong(rowPtrOffset).putLong(colIdxOffset).putLong(valuesOffset);
+            header.clear();
+            writeFully(channel, header, 0);
+            
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            writeInts(channel, buffer, matrix.rowPtr, matrix.rows + 1, rowPtrOffset);
+            writeInts(channel, buffer, matrix.colIdx, (int) nnz, colIdxOffset);
+            writeDoubles(channel, buffer, matrix.values, (int) nnz, valuesOffset);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    // Reads or writes a file in the format implied by its name: Matrix
+    // Market for ".mtx", this binary format otherwise. Reading always ends
+    // on the heap, since the array-based kernels cannot run on a mapping.
+    public static SparseMatrix readFile(Path path) throws IOException {
+        return isMatrixMarket(path) ? MatrixMarketIO.read(path) : load(path);
+    }
+    
+    public static void writeFile(SparseMatrix matrix, Path path) throws IOException {
+        if (isMatrixMarket(path)) {
+            MatrixMarketIO.write(matrix, path);
+        } else {
+            save(matrix, path);
+        }
+    }
+    
+    private static boolean isMatrixMarket(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".mtx");
+    }
+    
+    // Reads a matrix onto the heap: the mapped sections are copied into
+    // the CSR arrays in bulk, without parsing. This is a full copy of the
+    // file; use map() to read a matrix in place.
+    public static SparseMatrix load(Path path) throws IOException {
+        return map(path).toSparseMatrix();
+    }
+    
+    // Maps a matrix file read-only. The index sections are read once up
+    // front to check them; values are only read when accessed.
+    public static MappedSparseMatrix map(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException(path + " is not a sparse matrix file");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a sparse matrix file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(path + " has unsupported format version " + header.getInt(4));
+            }
+            int rows = header.getInt(8);
+            int cols = header.getInt(12);
+            long nnz = header.getLong(16);
+            long rowPtrOffset = header.getLong(24);
+            long colIdxOffset = header.getLong(32);
+            long valuesOffset = header.getLong(40);
+            if (rows < 0 || cols < 0 || nnz < 0 || nnz > MatrixGenerator.MAX_NONZEROS
+                    || rowPtrOffset < HEADER_BYTES || colIdxOffset < HEADER_BYTES || valuesOffset < HEADER_BYTES
+                    || rowPtrOffset + 4L * ((long) rows + 1) > size || colIdxOffset + 4L * nnz > size
+                    || valuesOffset + 8L * nnz > size) {
+                throw new IOException(path + " is truncated or corrupt");
+            }
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+            MappedSparseMatrix matrix = new MappedSparseMatrix(rows, cols, (int) nnz,
+                    mapInts(channel, mode, rowPtrOffset, (long) rows + 1),
+                    mapInts(channel, mode, colIdxOffset, nnz),
+                    mapDoubles(channel, mode, valuesOffset, nnz));
+            checkIndex(path, matrix, rows, cols, nnz);
+            return matrix;
+        } finally {
+            // Mappings stay valid after the channel is closed
+            channel.close();
+        }
+    }
+    
+    // Every kernel trusts the index sections: rowPtr must start at 0, never
+    // decrease and end at nnz, and the columns of each row must lie in
+    // [0, cols) and strictly increase. This reads rowPtr and colIdx once,
+    // but not the values.
+    private static void checkIndex(Path path, MappedSparseMatrix matrix, int rows, int cols, long nnz)
+            throws IOException {
+        int previous = matrix.rowStart(0);
+        if (previous != 0) {
+            throw new IOException(path + " is corrupt: row 0 starts at " + previous);
+        }
+        for (int i = 0; i < rows; i++) {
+            int next = matrix.rowStart(i + 1);
+            if (next < previous) {
+                throw new IOException(path + " is corrupt: row " + (i + 1) + " starts before row " + i);
+            }
+            previous = next;
+        }
+        if (previous != nnz) {
+            throw new IOException(path + " is corrupt: rows end at " + previous + ", not at " + nnz);
+        }
+        int p = 0;
+        for (int i = 0; i < rows; i++) {
+            int end = matrix.rowStart(i + 1);
+            int last = -1;
+            for (; p < end; p++) {
+                int j = matrix.colIndex(p);
+                if (j <= last || j >= cols) {
+                    throw new IOException(path + " is corrupt: row " + i + " has column " + j
+                            + (j < 0 || j >= cols ? " of " + cols : " out of order"));
+                }
+                last = j;
+            }
+        }
+    }
+    
+    // Creates a file of the given shape and maps it read-write, so large
+    // outputs can be filled in place without holding them on the heap.
+    // The caller sets every row start and entry through the returned matrix.
+    static MappedSparseMatrix create(Path path, int rows, int cols, int nnz) throws IOException {
+        long rowPtrOffset = HEADER_BYTES;
+        long colIdxOffset = align(rowPtrOffset + 4L * ((long) rows + 1));
+        long valuesOffset = align(colIdxOffset + 4L * nnz);
+        
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols).putLong(nnz);
+            header.putLong(rowPtrOffset).putLong(colIdxOffset).putLong(valuesOffset);
+            header.clear();
+            writeFully(channel, header, 0);
+            
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_WRITE;
+            return new MappedSparseMatrix(rows, cols, nnz,
+                    mapInts(channel, mode, rowPtrOffset, (long) rows + 1),
+                    mapInts(channel, mode, colIdxOffset, nnz),
+                    mapDoubles(channel, mode, valuesOffset, nnz));
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+    
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] data, int length, long position)
+            throws IOException {
+        int perBuffer = buffer.capacity() / 4;
+        for (int from = 0; from < length; from += perBuffer) {
+            int count = Math.min(perBuffer, length - from);
+            buffer.clear();
+            buffer.asIntBuffer().put(data, from, count);
+            buffer.limit(count * 4);
+            position = writeFully(channel, buffer, position);
+        }
+    }
+    
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] data, int length,
+            long position) throws IOException {
+        int perBuffer = buffer.capacity() / 8;
+        for (int from = 0; from < length; from += perBuffer) {
+            int count = Math.min(perBuffer, length - from);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(data, from, count);
+            buffer.limit(count * 8);
+            position = writeFully(channel, buffer, position);
+        }
+    }
+    
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+    
+    private static IntBuffer[] mapInts(FileChannel channel, FileChannel.MapMode mode, long offset, long count)
+            throws IOException {
+        IntBuffer[] segments = new IntBuffer[segmentCount(count)];
+        for (int s = 0; s < segments.length; s++) {
+            long first = (long) s << SEGMENT_SHIFT;
+            long length = Math.min(1L << SEGMENT_SHIFT, count - first);
+            segments[s] = map(channel, mode, offset + 4 * first, 4 * length).asIntBuffer();
+        }
+        return segments;
+    }
+    
+    private static DoubleBuffer[] mapDoubles(FileChannel channel, FileChannel.MapMode mode, long offset,
+            long count) throws IOException {
+        DoubleBuffer[] segments = new DoubleBuffer[segmentCount(count)];
+        for (int s = 0; s < segments.length; s++) {
+            long first = (long) s << SEGMENT_SHIFT;
+            long length = Math.min(1L << SEGMENT_SHIFT, count - first);
+            segments[s] = map(channel, mode, offset + 8 * first, 8 * length).asDoubleBuffer();
+        }
+        return segments;
+    }
+    
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+            throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    private static int segmentCount(long count) {
+        return (int) ((count + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+}
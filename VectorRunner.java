@@ -0,0 +1,64 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// spmv, spmv-transpose and cg on the sparse kernel. spmv and
+// spmv-transpose multiply A (or A^T) by a vector of ones; cg solves
+// S x = S * ones for an SPD matrix S built from the seed and prints the
+// solver summary to stderr. The vectors are reused across runs, as an
+// iterative solver would, and B is reported as empty.
+class VectorRunner extends BenchmarkRunner {
+    private ConjugateGradientSolver solver;
+    private ConjugateGradientSolver.Result solution;
+    private CompactSparseMatrix compact;
+    private double[] rhs, x;
+    
+    VectorRunner(MatrixBenchmark benchmark) {
+        super(benchmark);
+    }
+    
+    void prepare(ForkJoinPool pool) {
+        int size = benchmark.size;
+        boolean cg = benchmark.op.equals("cg");
+        a = benchmark.loadedA != null ? benchmark.loadedA
+                : cg ? MatrixGenerator.generateSpdMatrix(size, benchmark.density, benchmark.seed, pool,
+                        OperationProgress.NONE)
+                : benchmark.generate(benchmark.seed, pool);
+        b = new SparseMatrix(size, size);
+        solver = cg ? new ConjugateGradientSolver(a, pool) : null;
+        rhs = solver != null ? solver.onesRightHandSide() : new double[size];
+        x = new double[size];
+        if (solver == null) Arrays.fill(rhs, 1.0);
+        if (benchmark.isCompact()) {
+            Precision p = CompactRunner.choosePrecision(benchmark.precision, a, a);
+            compact = (CompactSparseMatrix) CompactRunner.toCompact(a, p);
+            CompactRunner.reportSize(p, compact.getByteSize(), CompactRunner.sparseBytes(a));
+        }
+    }
+    
+    String kernelName() {
+        return compact == null ? "sparse" : "sparse-" + compact.getPrecision();
+    }
+    
+    Object run(ForkJoinPool pool) {
+        boolean serial = benchmark.threads == 1;
+        if (solver != null) {
+            Arrays.fill(x, 0.0);
+            solution = solver.solve(rhs, x, 1e-10, 10 * benchmark.size, OperationProgress.NONE);
+        } else if (compact != null) {
+            compact.multiply(rhs, x);
+        } else if (benchmark.op.equals("spmv")) {
+            if (serial) MatrixKernels.performSparseMatrixVector(a, rhs, x);
+            else MatrixKernels.performParallelSparseMatrixVector(a, rhs, x, pool);
+        } else {
+            if (serial) MatrixKernels.performSparseTransposeMatrixVector(a, rhs, x);
+            else MatrixKernels.performParallelSparseTransposeMatrixVector(a, rhs, x, pool);
+        }
+        return x;
+    }
+    
+    void finish() {
+        if (solution != null) {
+            System.err.println("cg: " + solution);
+        }
+    }
+}
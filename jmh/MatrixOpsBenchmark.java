@@ -0,0 +1,112 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH benchmarks for every dense ("Traditional") and sparse operation,
+// swept over size and density. Only the kernel is measured: inputs are
+// generated once per trial and results are returned to JMH without being
+// converted back to dense form. Run with -prof gc to get allocation rates.
+// This is a loose source file compiled by hand against the JMH jars, with
+// JMH's annotation processor on the class path; the project has no build
+// module for it (see README for the command line).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class MatrixOpsBenchmark {
+    
+    @Param({ "100", "500", "1000" })
+    int size;
+    
+    @Param({ "0.001", "0.01", "0.1" })
+    double density;
+    
+    @Param({ "1" })
+    int threads;
+    
+    @Param({ "42" })
+    long seed;
+    
+    private ForkJoinPool pool;
+    private SparseMatrix sparseA, sparseB;
+    private DenseMatrix denseA, denseB;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        sparseA = MatrixGenerator.generateSparseMatrix(size, density, seed, pool, OperationProgress.NONE);
+        sparseB = MatrixGenerator.generateSparseMatrix(size, density, seed + 1, pool, OperationProgress.NONE);
+        denseA = sparseA.toDense();
+        denseB = sparseB.toDense();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+    
+    // Traditional (dense) kernels
+    @Benchmark
+    public DenseMatrix addTraditional() {
+        return MatrixKernels.performAddition(denseA, denseB, pool, MatrixKernels.SCALAR_KERNELS,
+                OperationProgress.NONE);
+    }
+    
+    @Benchmark
+    public DenseMatrix subtractTraditional() {
+        return MatrixKernels.performSubtraction(denseA, denseB, pool, MatrixKernels.SCALAR_KERNELS,
+                OperationProgress.NONE);
+    }
+    
+    @Benchmark
+    public DenseMatrix multiplyTraditional() {
+        return MatrixKernels.performTraditionalMultiplication(denseA, denseB, pool, MatrixKernels.SCALAR_KERNELS,
+                OperationProgress.NONE);
+    }
+    
+    @Benchmark
+    public DenseMatrix transposeTraditional() {
+        return MatrixKernels.performTraditionalTranspose(denseA, pool, OperationProgress.NONE);
+    }
+    
+    // Sparse kernels; the parallel variants are used when threads > 1,
+    // matching the GUI and MatrixBenchmark
+    @Benchmark
+    public SparseMatrix addSparse() {
+        return MatrixKernels.performSparseAddition(sparseA, sparseB, OperationProgress.NONE);
+    }
+    
+    @Benchmark
+    public SparseMatrix subtractSparse() {
+        return MatrixKernels.performSparseSubtraction(sparseA, sparseB, OperationProgress.NONE);
+    }
+    
+    @Benchmark
+    public SparseMatrix multiplySparse() {
+        return threads == 1
+                ? MatrixKernels.performSparseMultiplication(sparseA, sparseB, OperationProgress.NONE)
+                : MatrixKernels.performParallelSparseMultiplication(sparseA, sparseB, pool, OperationProgress.NONE);
+    }
+    
+    @Benchmark
+    public SparseMatrix transposeSparse() {
+        return threads == 1
+                ? MatrixKernels.performSparseTranspose(sparseA, OperationProgress.NONE)
+                : MatrixKernels.performParallelSparseTranspose(sparseA, pool, OperationProgress.NONE);
+    }
+}
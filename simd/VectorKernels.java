@@ -0,0 +1,55 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD dense kernels built on the JDK Vector API using the preferred
+// species of the running CPU. This file must be compiled and run with
+// --add-modules jdk.incubator.vector; MatrixKernels loads it
+// reflectively and falls back to ScalarKernels when it is missing.
+public class VectorKernels implements DenseKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    
+    public String getName() {
+        return "SIMD x" + SPECIES.length();
+    }
+    
+    public void add(double[] x, double[] y, double[] z, int from, int to) {
+        int p = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; p < upper; p += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, p);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, p);
+            vx.add(vy).intoArray(z, p);
+        }
+        for (; p < to; p++) {
+            z[p] = x[p] + y[p];
+        }
+    }
+    
+    public void subtract(double[] x, double[] y, double[] z, int from, int to) {
+        int p = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; p < upper; p += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, p);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, p);
+            vx.sub(vy).intoArray(z, p);
+        }
+        for (; p < to; p++) {
+            z[p] = x[p] - y[p];
+        }
+    }
+    
+    // Multiply then add (not fma) so results match the scalar kernels bit for bit
+    public void axpy(double alpha, double[] x, int xOff, double[] z, int zOff, int len) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int j = 0;
+        int upper = SPECIES.loopBound(len);
+        for (; j < upper; j += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + j);
+            DoubleVector vz = DoubleVector.fromArray(SPECIES, z, zOff + j);
+            vx.mul(va).add(vz).intoArray(z, zOff + j);
+        }
+        for (; j < len; j++) {
+            z[zOff + j] += alpha * x[xOff + j];
+        }
+    }
+}
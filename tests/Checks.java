@@ -0,0 +1,90 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Small helpers shared by the reference checks in this directory. Each
+// check is a main class that compares a kernel against a simpler one on
+// fixed seeds, prints one line per failure and exits with status 1 if
+// anything failed.
+class Checks {
+    private static int failures;
+    
+    static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.err.println("FAIL " + what);
+        }
+    }
+    
+    // Same shape, index arrays and value bits
+    static void same(SparseMatrix expected, SparseMatrix actual, String what) {
+        int nnz = expected.getNonZeroCount();
+        check(expected.rows == actual.rows && expected.cols == actual.cols
+                && Arrays.equals(expected.rowPtr, 0, expected.rows + 1, actual.rowPtr, 0, actual.rows + 1)
+                && Arrays.equals(expected.colIdx, 0, nnz, actual.colIdx, 0, actual.getNonZeroCount())
+                && Arrays.equals(expected.values, 0, nnz, actual.values, 0, actual.getNonZeroCount()),
+                what);
+    }
+    
+    // Same shape and every element within a relative 1e-12
+    static void close(SparseMatrix expected, SparseMatrix actual, String what) {
+        boolean ok = expected.rows == actual.rows && expected.cols == actual.cols;
+        for (int i = 0; ok && i < expected.rows; i++) {
+            for (int j = 0; ok && j < expected.cols; j++) {
+                ok = close(expected.get(i, j), actual.get(i, j));
+            }
+        }
+        check(ok, what);
+    }
+    
+    static void close(double[] expected, double[] actual, String what) {
+        boolean ok = expected.length == actual.length;
+        for (int i = 0; ok && i < expected.length; i++) {
+            ok = close(expected[i], actual[i]);
+        }
+        check(ok, what);
+    }
+    
+    private static boolean close(double expected, double actual) {
+        return Math.abs(expected - actual) <= 1e-12 * Math.max(1.0, Math.abs(expected));
+    }
+    
+    // rows x cols with each entry present with the given density and a
+    // value in [-1, 1), so sums depend on their order
+    static SparseMatrix random(int rows, int cols, double density, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[16];
+        double[] values = new double[16];
+        int w = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (random.nextDouble() >= density) continue;
+                if (w == colIdx.length) {
+                    colIdx = Arrays.copyOf(colIdx, 2 * w);
+                    values = Arrays.copyOf(values, 2 * w);
+                }
+                colIdx[w] = j;
+                values[w++] = random.nextDouble(-1.0, 1.0);
+            }
+            rowPtr[i + 1] = w;
+        }
+        return new SparseMatrix(rows, cols, rowPtr, Arrays.copyOf(colIdx, w), Arrays.copyOf(values, w));
+    }
+    
+    static double[] randomVector(int length, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] x = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = random.nextDouble(-1.0, 1.0);
+        }
+        return x;
+    }
+    
+    static void finish(String name) {
+        if (failures > 0) {
+            System.err.println(name + ": " + failures + " failed");
+            System.exit(1);
+        }
+        System.out.println(name + ": ok");
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// The DIA, ELL and BSR kernels against the CSR ones in MatrixKernels:
+// every add, subtract, multiply, transpose and matrix-vector product
+// must agree with CSR to rounding, on square and rectangular operands
+// whose patterns differ. Also checks that A - A stores nothing and that
+// a product wider than the conversion limit is still computed.
+public class FormatKernelCheck {
+    
+    public static void main(String[] args) {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            SparseMatrix a = banded(300, 300, 3, 1);
+            SparseMatrix b = banded(300, 300, 5, 2);
+            SparseMatrix wide = banded(120, 300, 4, 3);
+            SparseMatrix tall = banded(300, 120, 2, 4);
+            SparseMatrix blocksA = withRandomValues(MatrixGenerator.generateBlockMatrix(203, 4, 0.05, 5, pool,
+                    OperationProgress.NONE), 6);
+            SparseMatrix blocksB = withRandomValues(MatrixGenerator.generateBlockMatrix(203, 4, 0.05, 7, pool,
+                    OperationProgress.NONE), 8);
+            
+            checkDia(a, b);
+            checkDia(wide, wide);
+            checkDia(tall, tall);
+            checkDiaProduct(wide, tall);
+            checkEll(a, b);
+            checkEll(wide, wide);
+            checkEllProduct(tall, wide);
+            checkBsr(blocksA, blocksB, 4);
+            checkBsr(a, b, 3);
+            
+            // One full column: 1 value per row, but its transpose is a row of
+            // 300, far past MAX_FILL slots per non-zero
+            int[] rowPtr = new int[301];
+            int[] colIdx = new int[300];
+            double[] values = new double[300];
+            for (int i = 0; i < 300; i++) {
+                rowPtr[i + 1] = i + 1;
+                values[i] = i + 1;
+            }
+            SparseMatrix column = new SparseMatrix(300, 300, rowPtr, colIdx, values);
+            Checks.close(transpose(column), EllMatrix.fromSparse(column).transpose().toSparse(),
+                    "ELL transpose of a full column");
+        } finally {
+            pool.shutdown();
+        }
+        Checks.finish("FormatKernelCheck");
+    }
+    
+    private static void checkDia(SparseMatrix a, SparseMatrix b) {
+        DiaMatrix da = DiaMatrix.fromSparse(a), db = DiaMatrix.fromSparse(b);
+        String shape = " " + a.rows + "x" + a.cols;
+        Checks.close(a, da.toSparse(), "DIA round trip" + shape);
+        Checks.close(sum(a, b, false), DiaMatrix.add(da, db, false).toSparse(), "DIA add" + shape);
+        Checks.close(sum(a, b, true), DiaMatrix.add(da, db, true).toSparse(), "DIA subtract" + shape);
+        Checks.check(DiaMatrix.add(da, da, true).getDiagonalCount() == 0, "DIA A - A is empty" + shape);
+        Checks.close(transpose(a), da.transpose().toSparse(), "DIA transpose" + shape);
+        double[] x = Checks.randomVector(a.cols, 9);
+        double[] y = new double[a.rows];
+        da.multiply(x, y);
+        Checks.close(spmv(a, x), y, "DIA spmv" + shape);
+        if (a.cols == b.rows) checkDiaProduct(a, b);
+    }
+    
+    private static void checkDiaProduct(SparseMatrix a, SparseMatrix b) {
+        Checks.close(product(a, b), DiaMatrix.multiply(DiaMatrix.fromSparse(a), DiaMatrix.fromSparse(b)).toSparse(),
+                "DIA multiply " + a.rows + "x" + a.cols + " by " + b.rows + "x" + b.cols);
+    }
+    
+    private static void checkEll(SparseMatrix a, SparseMatrix b) {
+        EllMatrix ea = EllMatrix.fromSparse(a), eb = EllMatrix.fromSparse(b);
+        String shape = " " + a.rows + "x" + a.cols;
+        Checks.close(a, ea.toSparse(), "ELL round trip" + shape);
+        Checks.close(sum(a, b, false), EllMatrix.add(ea, eb, false).toSparse(), "ELL add" + shape);
+        Checks.close(sum(a, b, true), EllMatrix.add(ea, eb, true).toSparse(), "ELL subtract" + shape);
+        Checks.check(EllMatrix.add(ea, ea, true).getNonZeroCount() == 0, "ELL A - A is empty" + shape);
+        Checks.close(transpose(a), ea.transpose().toSparse(), "ELL transpose" + shape);
+        double[] x = Checks.randomVector(a.cols, 10);
+        double[] y = new double[a.rows];
+        ea.multiply(x, y);
+        Checks.close(spmv(a, x), y, "ELL spmv" + shape);
+        if (a.cols == b.rows) checkEllProduct(a, b);
+    }
+    
+    private static void checkEllProduct(SparseMatrix a, SparseMatrix b) {
+        Checks.close(product(a, b), EllMatrix.multiply(EllMatrix.fromSparse(a), EllMatrix.fromSparse(b)).toSparse(),
+                "ELL multiply " + a.rows + "x" + a.cols + " by " + b.rows + "x" + b.cols);
+    }
+    
+    private static void checkBsr(SparseMatrix a, SparseMatrix b, int bs) {
+        BsrMatrix ba = BsrMatrix.fromSparse(a, bs), bb = BsrMatrix.fromSparse(b, bs);
+        String shape = " " + a.rows + "x" + a.cols + " in " + bs + "x" + bs + " blocks";
+        Checks.close(a, ba.toSparse(), "BSR round trip" + shape);
+        Checks.close(sum(a, b, false), BsrMatrix.add(ba, bb, false).toSparse(), "BSR add" + shape);
+        Checks.close(sum(a, b, true), BsrMatrix.add(ba, bb, true).toSparse(), "BSR subtract" + shape);
+        Checks.check(BsrMatrix.add(ba, ba, true).getBlockCount() == 0, "BSR A - A is empty" + shape);
+        Checks.close(product(a, b), BsrMatrix.multiply(ba, bb).toSparse(), "BSR multiply" + shape);
+        Checks.close(transpose(a), ba.transpose().toSparse(), "BSR transpose" + shape);
+        double[] x = Checks.randomVector(a.cols, 11);
+        double[] y = new double[a.rows];
+        ba.multiply(x, y);
+        Checks.close(spmv(a, x), y, "BSR spmv" + shape);
+    }
+    
+    private static SparseMatrix sum(SparseMatrix a, SparseMatrix b, boolean subtract) {
+        return subtract ? MatrixKernels.performSparseSubtraction(a, b, OperationProgress.NONE)
+                : MatrixKernels.performSparseAddition(a, b, OperationProgress.NONE);
+    }
+    
+    private static SparseMatrix product(SparseMatrix a, SparseMatrix b) {
+        return MatrixKernels.performSparseMultiplication(a, b, OperationProgress.NONE);
+    }
+    
+    private static SparseMatrix transpose(SparseMatrix a) {
+        return MatrixKernels.performSparseTranspose(a, OperationProgress.NONE);
+    }
+    
+    private static double[] spmv(SparseMatrix a, double[] x) {
+        double[] y = new double[a.rows];
+        MatrixKernels.performSparseMatrixVector(a, x, y);
+        return y;
+    }
+    
+    // Every (i, j) with |i - j| <= band, each present with probability 0.7
+    // and a value in [-1, 1)
+    private static SparseMatrix banded(int rows, int cols, int band, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[rows * (2 * band + 1)];
+        double[] values = new double[colIdx.length];
+        int w = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = Math.max(0, i - band); j <= Math.min(cols - 1, i + band); j++) {
+                if (random.nextDouble() >= 0.7) continue;
+                colIdx[w] = j;
+                values[w++] = random.nextDouble(-1.0, 1.0);
+            }
+            rowPtr[i + 1] = w;
+        }
+        return new SparseMatrix(rows, cols, rowPtr, Arrays.copyOf(colIdx, w), Arrays.copyOf(values, w));
+    }
+    
+    // The pattern of matrix with values in [-1, 1)
+    private static SparseMatrix withRandomValues(SparseMatrix matrix, long seed) {
+        double[] values = Checks.randomVector(matrix.getNonZeroCount(), seed);
+        return new SparseMatrix(matrix.rows, matrix.cols, matrix.rowPtr, matrix.colIdx, values);
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Precision choice and the compact kernels. The narrowing rules must
+// never pick a precision that loses a value: integer results have to
+// come back exact, int32 next to float32 has to widen to float64, and the
+// compact kernels have to match the double kernels exactly, or after the
+// one rounding to float32 when both operands are float32.
+public class PrecisionCheck {
+    private static final Precision INT8 = Precision.INT8, INT32 = Precision.INT32;
+    private static final Precision FLOAT32 = Precision.FLOAT32, FLOAT64 = Precision.FLOAT64;
+    
+    public static void main(String[] args) {
+        checkRules();
+        checkFromLongs();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            checkSparseKernels();
+            checkDenseKernels(pool);
+        } finally {
+            pool.shutdown();
+        }
+        Checks.finish("PrecisionCheck");
+    }
+    
+    private static void checkRules() {
+        Checks.check(narrowest(0, 1, -128, 127) == INT8, "narrowest int8");
+        Checks.check(narrowest(128) == INT32, "narrowest 128");
+        Checks.check(narrowest(Integer.MIN_VALUE, Integer.MAX_VALUE) == INT32, "narrowest int range");
+        Checks.check(narrowest(0.5, -1.25) == FLOAT32, "narrowest float32");
+        Checks.check(narrowest(0x1p31) == FLOAT32, "narrowest 2^31");
+        Checks.check(narrowest(0x1p31 + 1) == FLOAT64, "narrowest 2^31 + 1");
+        Checks.check(narrowest(0.1) == FLOAT64, "narrowest 0.1");
+        
+        // holding(a, b) must hold every value of a and of b, and be the
+        // narrowest precision that does
+        Precision[][] expected = {
+            // FLOAT64  FLOAT32  INT32    INT8
+            {FLOAT64, FLOAT64, FLOAT64, FLOAT64},  // FLOAT64
+            {FLOAT64, FLOAT32, FLOAT64, FLOAT32},  // FLOAT32
+            {FLOAT64, FLOAT64, INT32, INT32},      // INT32
+            {FLOAT64, FLOAT32, INT32, INT8},       // INT8
+        };
+        Precision[] all = Precision.values();
+        for (int i = 0; i < all.length; i++) {
+            for (int j = 0; j < all.length; j++) {
+                Checks.check(Precision.holding(all[i], all[j]) == expected[i][j],
+                        "holding(" + all[i] + ", " + all[j] + ")");
+            }
+        }
+        Checks.check(Precision.floating(FLOAT32, FLOAT32) == FLOAT32, "floating(float32, float32)");
+        Checks.check(Precision.floating(FLOAT32, INT8) == FLOAT32, "floating(float32, int8)");
+        Checks.check(Precision.floating(INT32, FLOAT32) == FLOAT64, "floating(int32, float32)");
+        Checks.check(Precision.floating(FLOAT32, FLOAT64) == FLOAT64, "floating(float32, float64)");
+        
+        Checks.check(Precision.forIntegers(127) == INT8, "forIntegers(127)");
+        Checks.check(Precision.forIntegers(128) == INT32, "forIntegers(128)");
+        Checks.check(Precision.forIntegers(Integer.MAX_VALUE) == INT32, "forIntegers(int max)");
+        Checks.check(Precision.forIntegers(0x1p31) == FLOAT64, "forIntegers(2^31)");
+    }
+    
+    private static Precision narrowest(double... values) {
+        return Precision.narrowest(values, values.length);
+    }
+    
+    // fromLongs stores each set at a precision that gives every value back
+    private static void checkFromLongs() {
+        long[][] cases = {
+            {0, 127, -127},
+            {-128, 5},
+            {Integer.MAX_VALUE, -Integer.MAX_VALUE},
+            {Integer.MIN_VALUE, 1},
+            {1L << 53, -(1L << 40)},
+        };
+        Precision[] expected = {INT8, INT32, INT32, FLOAT64, FLOAT64};
+        for (int c = 0; c < cases.length; c++) {
+            long[] values = cases[c];
+            CompactValues compact = CompactValues.fromLongs(values, values.length);
+            Checks.check(compact.precision == expected[c], "fromLongs " + Arrays.toString(values) + " as "
+                    + compact.precision);
+            for (int p = 0; p < values.length; p++) {
+                Checks.check(compact.get(p) == values[p], "fromLongs keeps " + values[p]);
+            }
+        }
+    }
+    
+    private static void checkSparseKernels() {
+        SparseMatrix small = integers(80, 80, 0.1, 100, 1);
+        SparseMatrix large = integers(80, 80, 0.1, Integer.MAX_VALUE, 2);
+        SparseMatrix floats = floats(80, 80, 0.1, 3);
+        SparseMatrix floats2 = floats(80, 80, 0.1, 4);
+        
+        // int8 + int8 past 127, int32 + int32 past the int range
+        checkSparse(small, small, INT8, INT8, INT32, "int8");
+        checkSparse(large, large, INT32, INT32, FLOAT64, "int32");
+        checkSparse(floats, floats2, FLOAT32, FLOAT32, FLOAT32, "float32");
+        // int32 next to float32 holds neither in float32, so the result is
+        // float64 and exact
+        checkSparse(large, floats, INT32, FLOAT32, FLOAT64, "int32 with float32");
+        checkSparse(floats, small, FLOAT32, INT8, FLOAT32, "float32 with int8");
+        Checks.same(MatrixKernels.performSparseTranspose(large, OperationProgress.NONE),
+                CompactSparseMatrix.fromSparse(large, INT32).transpose().toSparse(), "int32 transpose");
+    }
+    
+    // Sum, difference and product must equal the double kernels exactly,
+    // rounded once when the result is float32, and be stored at the given
+    // precision
+    private static void checkSparse(SparseMatrix a, SparseMatrix b, Precision pa, Precision pb,
+            Precision result, String what) {
+        CompactSparseMatrix ca = CompactSparseMatrix.fromSparse(a, pa);
+        CompactSparseMatrix cb = CompactSparseMatrix.fromSparse(b, pb);
+        CompactSparseMatrix sum = CompactSparseMatrix.add(ca, cb, false);
+        Checks.check(sum.getPrecision() == result, what + " sum stored as " + sum.getPrecision());
+        boolean rounded = result == FLOAT32;
+        Checks.same(stored(MatrixKernels.performSparseAddition(a, b, OperationProgress.NONE), rounded),
+                sum.toSparse(), what + " sum");
+        Checks.same(stored(MatrixKernels.performSparseSubtraction(a, b, OperationProgress.NONE), rounded),
+                CompactSparseMatrix.add(ca, cb, true).toSparse(), what + " difference");
+        Checks.check(CompactSparseMatrix.add(ca, ca, true).getNonZeroCount() == 0, what + " A - A is empty");
+        CompactSparseMatrix product = CompactSparseMatrix.multiply(ca, cb);
+        Checks.check(product.getPrecision() == result, what + " product stored as " + product.getPrecision());
+        Checks.same(stored(MatrixKernels.performSparseMultiplication(a, b, OperationProgress.NONE), rounded),
+                product.toSparse(), what + " product");
+    }
+    
+    private static void checkDenseKernels(ForkJoinPool pool) {
+        DenseMatrix small = integers(40, 40, 1.0, 127, 5).toDense();
+        DenseMatrix floats = floats(40, 40, 1.0, 6).toDense();
+        CompactDenseMatrix ca = CompactDenseMatrix.fromDense(small, INT8);
+        CompactDenseMatrix cf = CompactDenseMatrix.fromDense(floats, FLOAT32);
+        
+        CompactDenseMatrix sum = CompactDenseMatrix.add(ca, ca, false, pool);
+        Checks.check(sum.getPrecision() == INT32, "dense int8 sum stored as " + sum.getPrecision());
+        Checks.check(Arrays.equals(MatrixKernels.performAddition(small, small, pool, MatrixKernels.SCALAR_KERNELS,
+                OperationProgress.NONE).data, sum.toDense().data), "dense int8 sum");
+        CompactDenseMatrix product = CompactDenseMatrix.multiply(ca, ca, pool);
+        Checks.check(product.getPrecision() == INT32, "dense int8 product stored as " + product.getPrecision());
+        Checks.check(Arrays.equals(denseProduct(small, small, pool), product.toDense().data),
+                "dense int8 product");
+        CompactDenseMatrix mixed = CompactDenseMatrix.multiply(CompactDenseMatrix.fromDense(small, INT32), cf,
+                pool);
+        Checks.check(mixed.getPrecision() == FLOAT64, "dense int32 with float32 stored as "
+                + mixed.getPrecision());
+        Checks.check(Arrays.equals(denseProduct(small, floats, pool), mixed.toDense().data),
+                "dense int32 with float32 product");
+        Checks.check(Arrays.equals(MatrixKernels.performTraditionalTranspose(floats, pool,
+                OperationProgress.NONE).data, cf.transpose(pool).toDense().data), "dense float32 transpose");
+    }
+    
+    private static double[] denseProduct(DenseMatrix a, DenseMatrix b, ForkJoinPool pool) {
+        return MatrixKernels.performTraditionalMultiplication(a, b, pool, MatrixKernels.SCALAR_KERNELS,
+                OperationProgress.NONE).data;
+    }
+    
+    // Random pattern with integer values in [-maxAbs, maxAbs], no zeros
+    private static SparseMatrix integers(int rows, int cols, double density, int maxAbs, long seed) {
+        SparseMatrix pattern = Checks.random(rows, cols, density, seed);
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] values = new double[pattern.getNonZeroCount()];
+        for (int p = 0; p < values.length; p++) {
+            int v = 1 + random.nextInt(maxAbs);
+            values[p] = random.nextBoolean() ? v : -v;
+        }
+        return new SparseMatrix(rows, cols, pattern.rowPtr, pattern.colIdx, values);
+    }
+    
+    // Random pattern with values that are exact floats
+    private static SparseMatrix floats(int rows, int cols, double density, long seed) {
+        SparseMatrix matrix = Checks.random(rows, cols, density, seed);
+        return new SparseMatrix(rows, cols, matrix.rowPtr, matrix.colIdx, roundedToFloat(matrix.values));
+    }
+    
+    private static SparseMatrix stored(SparseMatrix matrix, boolean rounded) {
+        return !rounded ? matrix : new SparseMatrix(matrix.rows, matrix.cols, matrix.rowPtr, matrix.colIdx,
+                roundedToFloat(matrix.values));
+    }
+    
+    private static double[] roundedToFloat(double[] values) {
+        double[] result = new double[values.length];
+        for (int p = 0; p < values.length; p++) {
+            result[p] = (float) values[p];
+        }
+        return result;
+    }
+}
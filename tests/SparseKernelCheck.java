@@ -0,0 +1,64 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// The parallel sparse kernels promise results bit-identical to the serial
+// ones for any thread count: each row is computed by the same code in the
+// same order, only on another thread. Checked here on matrices whose
+// values make sums order-dependent, including empty rows, a non-square
+// product and more chunks than rows.
+public class SparseKernelCheck {
+    private static final int[] THREADS = {1, 2, 3, 8};
+    
+    public static void main(String[] args) {
+        SparseMatrix a = Checks.random(300, 200, 0.03, 1);
+        SparseMatrix b = Checks.random(200, 250, 0.03, 2);
+        SparseMatrix square = Checks.random(400, 400, 0.02, 3);
+        SparseMatrix tiny = Checks.random(5, 5, 0.4, 4);
+        SparseMatrix empty = new SparseMatrix(50, 60);
+        
+        SparseMatrix[][] products = {{a, b}, {square, square}, {tiny, tiny}, {empty, new SparseMatrix(60, 40)}};
+        SparseMatrix[] transposes = {a, b, square, tiny, empty};
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (SparseMatrix[] p : products) {
+                    SparseMatrix serial = MatrixKernels.performSparseMultiplication(p[0], p[1],
+                            OperationProgress.NONE);
+                    SparseMatrix parallel = MatrixKernels.performParallelSparseMultiplication(p[0], p[1], pool,
+                            OperationProgress.NONE);
+                    Checks.same(serial, parallel, "multiply " + p[0].rows + "x" + p[0].cols + " on "
+                            + threads + " threads");
+                }
+                for (SparseMatrix m : transposes) {
+                    SparseMatrix serial = MatrixKernels.performSparseTranspose(m, OperationProgress.NONE);
+                    SparseMatrix parallel = MatrixKernels.performParallelSparseTranspose(m, pool,
+                            OperationProgress.NONE);
+                    Checks.same(serial, parallel, "transpose " + m.rows + "x" + m.cols + " on "
+                            + threads + " threads");
+                }
+                double[] x = Checks.randomVector(square.cols, 5);
+                double[] serial = new double[square.rows];
+                double[] parallel = new double[square.rows];
+                MatrixKernels.performSparseMatrixVector(square, x, serial);
+                MatrixKernels.performParallelSparseMatrixVector(square, x, parallel, pool);
+                Checks.check(Arrays.equals(serial, parallel), "spmv on " + threads + " threads");
+                MatrixKernels.performSparseTransposeMatrixVector(square, x, serial);
+                MatrixKernels.performParallelSparseTransposeMatrixVector(square, x, parallel, pool);
+                Checks.check(Arrays.equals(serial, parallel), "spmv-transpose on " + threads
+                        + " threads");
+            } finally {
+                pool.shutdown();
+            }
+        }
+        
+        // Workspace transpose matches the allocating one, also after the
+        // workspace held a larger result
+        MatrixKernels.TransposeWorkspace workspace = new MatrixKernels.TransposeWorkspace();
+        for (SparseMatrix m : new SparseMatrix[] {square, a, tiny}) {
+            MatrixKernels.performSparseTranspose(m, workspace, OperationProgress.NONE);
+            Checks.same(MatrixKernels.performSparseTranspose(m, OperationProgress.NONE),
+                    workspace.toSparseMatrix(), "workspace transpose " + m.rows + "x" + m.cols);
+        }
+        Checks.finish("SparseKernelCheck");
+    }
+}